@@ -0,0 +1,113 @@
+package ru.kata.spring.boot_security.demo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.web.servlet.View;
+import org.thymeleaf.spring5.view.ThymeleafViewResolver;
+import ru.kata.spring.boot_security.demo.entity.Role;
+import ru.kata.spring.boot_security.demo.entity.User;
+import ru.kata.spring.boot_security.demo.security.UserPrincipal;
+import ru.kata.spring.boot_security.demo.service.ChunkedUserPage;
+import ru.kata.spring.boot_security.demo.service.UserPage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рендеринг admin.html с таблицей из N пользователей. Страница в приложении ограничена
+ * admin.users.max-page-size, большие N показывают стоимость строки таблицы в пределе.
+ * Таблица обходится через ChunkedUserPage порциями по admin.users.render-chunk-size, как в AdminController.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdminTemplateBenchmark {
+
+    private static final int RENDER_CHUNK_SIZE = 100;
+
+    @Param({"100", "10000", "100000"})
+    private int users;
+
+    private ServletWebServerApplicationContext context;
+    private List<User> rows;
+    private View view;
+    private Map<String, Object> model;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = (ServletWebServerApplicationContext) BenchmarkContext.start();
+        view = context.getBean(ThymeleafViewResolver.class).resolveViewName("admin", Locale.getDefault());
+
+        Role admin = new Role("ROLE_ADMIN");
+        admin.setId(1L);
+        Role user = new Role("ROLE_USER");
+        user.setId(2L);
+
+        rows = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            User row = new User("user" + i, "password", "Имя", "Фамилия", 30, true);
+            row.setId((long) i + 1);
+            row.setRoles(i % 10 == 0 ? Set.of(admin, user) : Set.of(user));
+            rows.add(row);
+        }
+        User authUser = rows.get(0);
+
+        User form = new User();
+        model = new HashMap<>();
+        model.put("pageSize", users);
+        model.put("user", form);
+        model.put(BindingResult.MODEL_KEY_PREFIX + "user", new BeanPropertyBindingResult(form, "user"));
+        model.put("roles", List.of(admin, user));
+        model.put("activeTab", "users");
+        model.put("authUser", UserPrincipal.from(authUser));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int renderAdminPage() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(context.getServletContext(), "GET", "/admin");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        // Страницу можно обойти только один раз, поэтому она создаётся на каждый вызов
+        Map<String, Object> pageModel = new HashMap<>(model);
+        pageModel.put("users", new ChunkedUserPage(this::loadPage, null, users, RENDER_CHUNK_SIZE, () -> {
+        }));
+        view.render(pageModel, request, response);
+        return response.getContentLength() + response.getContentAsByteArray().length;
+    }
+
+    // id строк идут подряд с 1, поэтому курсор совпадает с индексом следующей строки
+    private UserPage loadPage(Long afterId, int limit) {
+        int from = afterId != null ? afterId.intValue() : 0;
+        int to = Math.min(from + limit, rows.size());
+        List<User> chunk = rows.subList(from, to);
+        return new UserPage(chunk, to < rows.size() ? (long) to : null);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.kata.spring.boot_security.demo.benchmark;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import ru.kata.spring.boot_security.demo.SpringBootSecurityDemoApplication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Поднимает приложение на встроенной H2 (режим MySQL) вместо боевой БД.
+ */
+final class BenchmarkContext {
+
+    private static final int BATCH = 1000;
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start() {
+        // Аргументы командной строки перекрывают application.properties, в отличие от default properties
+        return new SpringApplicationBuilder(SpringBootSecurityDemoApplication.class)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--server.port=0");
+    }
+
+    /**
+     * Заводит пользователей user0..user{count-1} с ролью ROLE_USER одним JDBC-batch.
+     */
+    static void seedUsers(ConfigurableApplicationContext context, int count) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        String password = new BCryptPasswordEncoder(4).encode("password");
+        Long roleId = jdbcTemplate.queryForObject(
+                "SELECT id FROM authorities WHERE authority = 'ROLE_USER'", Long.class);
+
+        List<Object[]> users = new ArrayList<>(BATCH);
+        for (int i = 0; i < count; i++) {
+            users.add(new Object[]{"user" + i, password, "Имя", "Фамилия", 30, true});
+            if (users.size() == BATCH || i == count - 1) {
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO users (username, password, name, lastname, age, enabled) VALUES (?, ?, ?, ?, ?, ?)",
+                        users);
+                users.clear();
+            }
+        }
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role_id) " +
+                "SELECT id, ? FROM users WHERE username LIKE 'user%'", roleId);
+    }
+}
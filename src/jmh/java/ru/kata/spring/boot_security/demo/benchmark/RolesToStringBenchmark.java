@@ -0,0 +1,59 @@
+package ru.kata.spring.boot_security.demo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.kata.spring.boot_security.demo.entity.Role;
+import ru.kata.spring.boot_security.demo.entity.User;
+import ru.kata.spring.boot_security.demo.security.UserPrincipal;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RolesToStringBenchmark {
+
+    @Param({"1", "3"})
+    private int roles;
+
+    private User user;
+    private UserPrincipal principal;
+
+    @Setup
+    public void setUp() {
+        Set<Role> roleSet = new HashSet<>();
+        for (int i = 0; i < roles; i++) {
+            Role role = new Role("ROLE_" + i);
+            role.setId((long) i + 1);
+            roleSet.add(role);
+        }
+        user = new User("user", "password", "Имя", "Фамилия", 30, true);
+        user.setId(1L);
+        user.setRoles(roleSet);
+        principal = UserPrincipal.from(user);
+    }
+
+    @Benchmark
+    public String userRolesToString() {
+        return user.rolesToString();
+    }
+
+    @Benchmark
+    public String principalRolesToString() {
+        return principal.rolesToString();
+    }
+}
@@ -0,0 +1,51 @@
+package ru.kata.spring.boot_security.demo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import ru.kata.spring.boot_security.demo.configs.SuccessUserHandler;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuccessUserHandlerBenchmark {
+
+    @Param({"ROLE_ADMIN,ROLE_USER", "ROLE_USER"})
+    private String authorities;
+
+    private SuccessUserHandler handler;
+    private Authentication authentication;
+
+    @Setup
+    public void setUp() {
+        handler = new SuccessUserHandler();
+        authentication = new UsernamePasswordAuthenticationToken("user", null,
+                AuthorityUtils.commaSeparatedStringToAuthorityList(authorities));
+    }
+
+    @Benchmark
+    public String onAuthenticationSuccess() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        handler.onAuthenticationSuccess(new MockHttpServletRequest(), response, authentication);
+        return response.getRedirectedUrl();
+    }
+}
@@ -0,0 +1,9 @@
+package ru.kata.spring.boot_security.demo.audit;
+
+public enum AuditAction {
+    CREATE,
+    UPDATE,
+    DELETE,
+    PASSWORD_CHANGE,
+    LOCK
+}
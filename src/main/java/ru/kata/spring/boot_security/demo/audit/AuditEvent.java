@@ -0,0 +1,57 @@
+package ru.kata.spring.boot_security.demo.audit;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Изменение пользователя для журнала аудита. Автор и время фиксируются в момент публикации,
+ * в запись журнала событие попадает только после коммита.
+ */
+public class AuditEvent {
+
+    private static final String SYSTEM_ACTOR = "system";
+
+    private final Instant occurredAt;
+    private final String actor;
+    private final AuditAction action;
+    private final Long targetId;
+    private final String targetUsername;
+
+    public AuditEvent(Instant occurredAt, String actor, AuditAction action, Long targetId, String targetUsername) {
+        this.occurredAt = occurredAt;
+        this.actor = actor;
+        this.action = action;
+        this.targetId = targetId;
+        this.targetUsername = targetUsername;
+    }
+
+    public static AuditEvent of(AuditAction action, Long targetId, String targetUsername) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String actor = authentication != null ? authentication.getName() : SYSTEM_ACTOR;
+        // Миллисекунды: время входит в курсор страниц журнала и должно совпадать с сохранённым
+        return new AuditEvent(Instant.now().truncatedTo(ChronoUnit.MILLIS), actor, action, targetId, targetUsername);
+    }
+
+    public Instant getOccurredAt() {
+        return occurredAt;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    public AuditAction getAction() {
+        return action;
+    }
+
+    public Long getTargetId() {
+        return targetId;
+    }
+
+    public String getTargetUsername() {
+        return targetUsername;
+    }
+}
@@ -0,0 +1,53 @@
+package ru.kata.spring.boot_security.demo.audit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.kata.spring.boot_security.demo.entity.AuditRecord;
+import ru.kata.spring.boot_security.demo.repositories.AuditRecordRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Service
+public class AuditLogService {
+
+    private final AuditRecordRepository auditRecordRepository;
+
+    @Autowired
+    public AuditLogService(AuditRecordRepository auditRecordRepository) {
+        this.auditRecordRepository = auditRecordRepository;
+    }
+
+    /**
+     * Записи за [from, to] от новых к старым. cursor — nextCursor предыдущей страницы.
+     */
+    @Transactional(readOnly = true)
+    public AuditPage getPage(Instant from, Instant to, String cursor, int size) {
+        Instant beforeAt = to != null ? to : Instant.now();
+        long beforeId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isEmpty()) {
+            int separator = cursor.indexOf('_');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Некорректный курсор: " + cursor);
+            }
+            try {
+                beforeAt = Instant.ofEpochMilli(Long.parseLong(cursor.substring(0, separator)));
+                beforeId = Long.parseLong(cursor.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Некорректный курсор: " + cursor);
+            }
+        }
+
+        // Берём на одну запись больше, чтобы понять, есть ли следующая страница
+        List<AuditRecord> records = auditRecordRepository.findPage(from != null ? from : Instant.EPOCH,
+                beforeAt, beforeId, PageRequest.of(0, size + 1));
+        if (records.size() <= size) {
+            return new AuditPage(records, null);
+        }
+        List<AuditRecord> page = records.subList(0, size);
+        AuditRecord last = page.get(size - 1);
+        return new AuditPage(page, last.getOccurredAt().toEpochMilli() + "_" + last.getId());
+    }
+}
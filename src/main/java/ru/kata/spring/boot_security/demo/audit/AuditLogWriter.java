@@ -0,0 +1,221 @@
+package ru.kata.spring.boot_security.demo.audit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Отложенная запись журнала аудита. События после коммита кладутся в кольцевой буфер,
+ * отдельный поток пачками пишет их в audit_log, так что транзакция изменения
+ * не ждёт записи аудита.
+ */
+@Component
+public class AuditLogWriter implements SmartLifecycle, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditLogWriter.class);
+
+    private static final String INSERT_AUDIT =
+            "INSERT INTO audit_log (occurred_at, actor, action, target_id, target_username) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AuditRingBuffer<AuditEvent> buffer;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final AuditOverflowPolicy overflowPolicy;
+    private final long overflowTimeoutNanos;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder writtenByCaller = new LongAdder();
+
+    private volatile boolean running;
+    private volatile Thread writerThread;
+
+    @Autowired
+    public AuditLogWriter(DataSource dataSource,
+                          @Value("${audit.buffer-capacity:8192}") int bufferCapacity,
+                          @Value("${audit.batch-size:200}") int batchSize,
+                          @Value("${audit.flush-interval:200ms}") Duration flushInterval,
+                          @Value("${audit.overflow-policy:DROP}") AuditOverflowPolicy overflowPolicy,
+                          @Value("${audit.overflow-timeout:1s}") Duration overflowTimeout) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.buffer = new AuditRingBuffer<>(bufferCapacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.overflowPolicy = overflowPolicy;
+        this.overflowTimeoutNanos = overflowTimeout.toNanos();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAuditEvent(AuditEvent event) {
+        if (buffer.offer(event)) {
+            wakeWriterIfBatchReady();
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                if (offerWithin(event, overflowTimeoutNanos)) {
+                    return;
+                }
+                drop(event);
+                break;
+            case CALLER_RUNS:
+                writeBatch(List.of(event));
+                writtenByCaller.increment();
+                break;
+            default:
+                drop(event);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this::drainLoop, "audit-writer");
+        thread.setDaemon(true);
+        writerThread = thread;
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread thread = writerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                log.warn("Audit writer did not stop in time, {} events left unwritten", buffer.size());
+                return;
+            }
+        }
+        // Всё, что успели опубликовать до остановки, дописываем в вызывающем потоке
+        drainAll();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Останавливается после веб-сервера, чтобы события последних запросов успели попасть в буфер
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 2;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("overflowPolicy", overflowPolicy.name());
+        result.put("bufferCapacity", buffer.capacity());
+        result.put("buffered", buffer.size());
+        result.put("written", written.sum());
+        result.put("writtenByCaller", writtenByCaller.sum());
+        result.put("dropped", dropped.sum());
+        result.put("failed", failed.sum());
+        return result;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("audit.buffer.size", buffer, AuditRingBuffer::size)
+                .description("События аудита, ожидающие записи")
+                .register(registry);
+        registerCounter(registry, "written", written);
+        registerCounter(registry, "dropped", dropped);
+        registerCounter(registry, "failed", failed);
+    }
+
+    private void registerCounter(MeterRegistry registry, String outcome, LongAdder adder) {
+        FunctionCounter.builder("audit.events", adder, LongAdder::sum)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private void drainLoop() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        while (running) {
+            if (buffer.drainTo(batch, batchSize) == 0) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+                continue;
+            }
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void drainAll() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<AuditEvent> batch) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT_AUDIT, batch.stream()
+                    .map(event -> new Object[]{Timestamp.from(event.getOccurredAt()), event.getActor(),
+                            event.getAction().name(), event.getTargetId(), event.getTargetUsername()})
+                    .collect(Collectors.toList()));
+            written.add(batch.size());
+        } catch (DataAccessException e) {
+            failed.add(batch.size());
+            log.error("Failed to write {} audit events", batch.size(), e);
+        }
+    }
+
+    private boolean offerWithin(AuditEvent event, long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        do {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            if (buffer.offer(event)) {
+                return true;
+            }
+        } while (System.nanoTime() < deadline);
+        return false;
+    }
+
+    private void wakeWriterIfBatchReady() {
+        Thread thread = writerThread;
+        if (thread != null && buffer.size() >= batchSize) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void drop(AuditEvent event) {
+        dropped.increment();
+        if (dropped.sum() % 1000 == 1) {
+            log.warn("Audit buffer full, dropped {} events so far (last: {} of user {})",
+                    dropped.sum(), event.getAction(), event.getTargetId());
+        }
+    }
+}
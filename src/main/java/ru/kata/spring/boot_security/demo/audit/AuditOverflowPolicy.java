@@ -0,0 +1,13 @@
+package ru.kata.spring.boot_security.demo.audit;
+
+/**
+ * Что делать с событием аудита, если буфер заполнен.
+ */
+public enum AuditOverflowPolicy {
+    // Отбросить событие и увеличить счётчик потерь
+    DROP,
+    // Подождать освобождения места не дольше audit.overflow-timeout, затем отбросить
+    BLOCK,
+    // Записать событие в БД сразу, в потоке, который его опубликовал
+    CALLER_RUNS
+}
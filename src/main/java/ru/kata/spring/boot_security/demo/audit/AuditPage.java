@@ -0,0 +1,24 @@
+package ru.kata.spring.boot_security.demo.audit;
+
+import ru.kata.spring.boot_security.demo.entity.AuditRecord;
+
+import java.util.List;
+
+public class AuditPage {
+
+    private final List<AuditRecord> records;
+    private final String nextCursor;
+
+    public AuditPage(List<AuditRecord> records, String nextCursor) {
+        this.records = records;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<AuditRecord> getRecords() {
+        return records;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
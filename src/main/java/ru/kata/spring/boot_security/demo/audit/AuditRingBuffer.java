@@ -0,0 +1,72 @@
+package ru.kata.spring.boot_security.demo.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ограниченный кольцевой буфер без блокировок: много писателей, один читатель.
+ * Писатель занимает ячейку CAS-ом по хвосту и кладёт в неё элемент; читатель забирает
+ * заполненные ячейки подряд, обнуляет их и только потом сдвигает голову.
+ */
+final class AuditRingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    AuditRingBuffer(int requestedCapacity) {
+        int size = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.capacity = size;
+        this.mask = size - 1;
+    }
+
+    /**
+     * false — буфер заполнен.
+     */
+    boolean offer(T item) {
+        while (true) {
+            long claimed = tail.get();
+            if (claimed - head >= capacity) {
+                return false;
+            }
+            if (tail.compareAndSet(claimed, claimed + 1)) {
+                slots.set((int) (claimed & mask), item);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Вызывается только потоком-читателем. Останавливается на ячейке, которую писатель
+     * уже занял, но ещё не заполнил: она будет забрана при следующем вызове.
+     */
+    int drainTo(List<T> sink, int max) {
+        long position = head;
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) (position & mask);
+            T item = slots.get(index);
+            if (item == null) {
+                break;
+            }
+            slots.lazySet(index, null);
+            sink.add(item);
+            position++;
+            drained++;
+        }
+        head = position;
+        return drained;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
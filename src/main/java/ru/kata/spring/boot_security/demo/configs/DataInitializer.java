@@ -0,0 +1,75 @@
+package ru.kata.spring.boot_security.demo.configs;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.kata.spring.boot_security.demo.entity.Role;
+import ru.kata.spring.boot_security.demo.entity.User;
+import ru.kata.spring.boot_security.demo.repositories.RoleRepository;
+import ru.kata.spring.boot_security.demo.repositories.UserRepository;
+import ru.kata.spring.boot_security.demo.service.RoleRegistry;
+import ru.kata.spring.boot_security.demo.service.UserChangedEvent;
+import ru.kata.spring.boot_security.demo.service.UsernameFilter;
+
+import java.util.Set;
+
+// В профиле fast-start схему и начальные данные готовит Flyway
+@Component
+@Profile("!fast-start")
+public class DataInitializer implements SmartInitializingSingleton {
+
+    private final RoleTableMigration roleTableMigration;
+    private final RoleRepository roleRepository;
+    private final UserRepository userRepository;
+    private final RoleRegistry roleRegistry;
+    private final PasswordEncoder passwordEncoder;
+    private final UsernameFilter usernameFilter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public DataInitializer(RoleTableMigration roleTableMigration, RoleRepository roleRepository,
+                           UserRepository userRepository, RoleRegistry roleRegistry,
+                           PasswordEncoder passwordEncoder, UsernameFilter usernameFilter,
+                           ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager) {
+        this.roleTableMigration = roleTableMigration;
+        this.roleRepository = roleRepository;
+        this.userRepository = userRepository;
+        this.roleRegistry = roleRegistry;
+        this.passwordEncoder = passwordEncoder;
+        this.usernameFilter = usernameFilter;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        roleTableMigration.migrate();
+        transactionTemplate.executeWithoutResult(status -> seed());
+        roleRegistry.reload();
+    }
+
+    //Создал админа при запуске чтобы с самого начала была возможность редачить всё
+    private void seed() {
+        Role adminRole = findOrCreateRole("ROLE_ADMIN");
+        Role userRole = findOrCreateRole("ROLE_USER");
+
+        if (userRepository.findByUsername("admin").isEmpty()) {
+            User admin = new User("admin", passwordEncoder.encode("admin"), null, null, null, true);
+            admin.setRoles(Set.of(adminRole, userRole));
+            userRepository.save(admin);
+            usernameFilter.put(admin.getUsername());
+            eventPublisher.publishEvent(UserChangedEvent.saved(admin));
+        }
+    }
+
+    private Role findOrCreateRole(String authority) {
+        return roleRepository.findByAuthority(authority)
+                .orElseGet(() -> roleRepository.save(new Role(authority)));
+    }
+}
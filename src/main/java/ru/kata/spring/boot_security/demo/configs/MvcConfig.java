@@ -1,11 +1,14 @@
 package ru.kata.spring.boot_security.demo.configs;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.kata.spring.boot_security.demo.security.BoundedPasswordEncoder;
+import ru.kata.spring.boot_security.demo.security.PasswordHashingExecutor;
 
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
@@ -14,7 +17,7 @@ public class MvcConfig implements WebMvcConfigurer {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(PasswordHashingExecutor passwordHashingExecutor, MeterRegistry meterRegistry) {
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), passwordHashingExecutor, meterRegistry);
     }
 }
@@ -0,0 +1,160 @@
+package ru.kata.spring.boot_security.demo.configs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Переводит таблицу authorities со схемы JdbcUserDetailsManager (строка на пользователя и роль)
+ * на справочник ролей: одна строка на authority, связи только через user_roles.
+ * Работает порциями в коротких транзакциях и безопасна при повторном запуске.
+ */
+@Component
+public class RoleTableMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(RoleTableMigration.class);
+
+    private static final String TABLE = "authorities";
+    private static final String UNIQUE_INDEX = "uk_authorities_authority";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    @Autowired
+    public RoleTableMigration(DataSource dataSource,
+                              @Value("${roles.migration.chunk-size:1000}") int chunkSize) {
+        // Только DataSource, без бина JdbcTemplate и JPA: миграция может выполняться из Flyway,
+        // а они сами инициализируются после него
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.dataSource = dataSource;
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.chunkSize = chunkSize;
+    }
+
+    public void migrate() {
+        if (hasColumn(TABLE, "username")) {
+            long removed = deduplicate();
+            jdbcTemplate.execute("ALTER TABLE authorities DROP COLUMN username");
+            log.info("authorities normalised: {} duplicate rows merged", removed);
+        }
+        if (!hasUniqueIndexOnAuthority()) {
+            jdbcTemplate.execute("CREATE UNIQUE INDEX " + UNIQUE_INDEX + " ON authorities (authority)");
+        }
+    }
+
+    private long deduplicate() {
+        Map<String, Long> canonical = new HashMap<>();
+        jdbcTemplate.query("SELECT authority, MIN(id) AS keep_id FROM authorities GROUP BY authority",
+                rs -> {
+                    canonical.put(rs.getString("authority"), rs.getLong("keep_id"));
+                });
+
+        long removed = 0;
+        long lastId = 0;
+        while (true) {
+            List<long[]> duplicates = new ArrayList<>();
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT id, authority FROM authorities WHERE id > ? ORDER BY id LIMIT " + chunkSize, lastId);
+            if (rows.isEmpty()) {
+                break;
+            }
+            for (Map<String, Object> row : rows) {
+                long id = ((Number) row.get("id")).longValue();
+                long keepId = canonical.get((String) row.get("authority"));
+                if (id != keepId) {
+                    duplicates.add(new long[]{id, keepId});
+                }
+                lastId = id;
+            }
+            if (!duplicates.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> mergeDuplicates(duplicates));
+                removed += duplicates.size();
+            }
+        }
+        return removed;
+    }
+
+    // Связи с дублем переносим на каноническую роль (если у пользователя её ещё нет), затем удаляем дубль
+    private void mergeDuplicates(List<long[]> duplicates) {
+        jdbcTemplate.batchUpdate(
+                "UPDATE user_roles SET role_id = ? WHERE role_id = ? AND user_id NOT IN " +
+                        "(SELECT user_id FROM (SELECT user_id FROM user_roles WHERE role_id = ?) existing)",
+                toArgs(duplicates, pair -> new Object[]{pair[1], pair[0], pair[1]}));
+        jdbcTemplate.batchUpdate("DELETE FROM user_roles WHERE role_id = ?",
+                toArgs(duplicates, pair -> new Object[]{pair[0]}));
+        jdbcTemplate.batchUpdate("DELETE FROM authorities WHERE id = ?",
+                toArgs(duplicates, pair -> new Object[]{pair[0]}));
+    }
+
+    private static List<Object[]> toArgs(List<long[]> duplicates, Function<long[], Object[]> mapper) {
+        List<Object[]> args = new ArrayList<>(duplicates.size());
+        for (long[] pair : duplicates) {
+            args.add(mapper.apply(pair));
+        }
+        return args;
+    }
+
+    private boolean hasColumn(String table, String column) {
+        return withMetaData((metaData, catalog) -> SchemaMetadata.columnExists(metaData, catalog, table, column));
+    }
+
+    private boolean hasUniqueIndexOnAuthority() {
+        return withMetaData((metaData, catalog) -> {
+            for (String name : new String[]{TABLE, TABLE.toUpperCase(Locale.ROOT)}) {
+                Map<String, List<String>> columnsByIndex = new HashMap<>();
+                try (ResultSet rs = metaData.getIndexInfo(catalog, null, name, true, false)) {
+                    while (rs.next()) {
+                        String index = rs.getString("INDEX_NAME");
+                        String column = rs.getString("COLUMN_NAME");
+                        if (index != null && column != null) {
+                            columnsByIndex.computeIfAbsent(index, key -> new ArrayList<>()).add(column);
+                        }
+                    }
+                }
+                for (List<String> columns : columnsByIndex.values()) {
+                    if (columns.size() == 1 && "authority".equalsIgnoreCase(columns.get(0))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        });
+    }
+
+    private <T> T withMetaData(MetaDataCallback<T> callback) {
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            // Текущий каталог, а не null: иначе Connector/J находит одноимённые таблицы во всех базах сервера
+            return callback.apply(connection.getMetaData(), connection.getCatalog());
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось прочитать метаданные схемы", e);
+        } finally {
+            JdbcUtils.closeConnection(connection);
+        }
+    }
+
+    private interface MetaDataCallback<T> {
+        T apply(DatabaseMetaData metaData, String catalog) throws SQLException;
+    }
+}
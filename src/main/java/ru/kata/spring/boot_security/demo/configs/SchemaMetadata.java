@@ -0,0 +1,29 @@
+package ru.kata.spring.boot_security.demo.configs;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Проверки схемы для Java-миграций: в MySQL нет ADD COLUMN IF NOT EXISTS.
+ */
+final class SchemaMetadata {
+
+    private SchemaMetadata() {
+    }
+
+    static boolean columnExists(DatabaseMetaData metaData, String catalog, String table, String column)
+            throws SQLException {
+        // Регистр имён в метаданных зависит от СУБД
+        for (String tableName : new String[]{table, table.toUpperCase()}) {
+            try (ResultSet columns = metaData.getColumns(catalog, null, tableName, null)) {
+                while (columns.next()) {
+                    if (column.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,31 @@
+package ru.kata.spring.boot_security.demo.configs;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Flyway-версия нормализации authorities: та же RoleTableMigration, что и при обычном старте.
+ * Выполняется вне транзакции Flyway — миграция сама коммитит порции.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.flyway.enabled", havingValue = "true")
+public class V2__NormaliseAuthorities extends BaseJavaMigration {
+
+    private final RoleTableMigration roleTableMigration;
+
+    public V2__NormaliseAuthorities(RoleTableMigration roleTableMigration) {
+        this.roleTableMigration = roleTableMigration;
+    }
+
+    @Override
+    public boolean canExecuteInTransaction() {
+        return false;
+    }
+
+    @Override
+    public void migrate(Context context) {
+        roleTableMigration.migrate();
+    }
+}
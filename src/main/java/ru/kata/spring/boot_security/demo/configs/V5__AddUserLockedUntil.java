@@ -0,0 +1,30 @@
+package ru.kata.spring.boot_security.demo.configs;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Колонка users.locked_until. В MySQL нет ADD COLUMN IF NOT EXISTS, а базы, созданные
+ * ddl-auto=update, уже могут её содержать, поэтому наличие проверяется по метаданным.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.flyway.enabled", havingValue = "true")
+public class V5__AddUserLockedUntil extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        if (SchemaMetadata.columnExists(connection.getMetaData(), connection.getCatalog(), "users", "locked_until")) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE users ADD COLUMN locked_until DATETIME(6)");
+        }
+    }
+}
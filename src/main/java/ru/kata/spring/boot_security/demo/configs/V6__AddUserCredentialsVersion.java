@@ -0,0 +1,29 @@
+package ru.kata.spring.boot_security.demo.configs;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Колонка users.credentials_version. DEFAULT 0 нужен пакетному импорту, который вставляет строки через JDBC.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.flyway.enabled", havingValue = "true")
+public class V6__AddUserCredentialsVersion extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        if (SchemaMetadata.columnExists(connection.getMetaData(), connection.getCatalog(), "users", "credentials_version")) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE users ADD COLUMN credentials_version INT DEFAULT 0 NOT NULL");
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.kata.spring.boot_security.demo.configs;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Колонки version для оптимистической блокировки users и authorities.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.flyway.enabled", havingValue = "true")
+public class V7__AddVersionColumns extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            for (String table : new String[]{"users", "authorities"}) {
+                if (!SchemaMetadata.columnExists(connection.getMetaData(), connection.getCatalog(), table, "version")) {
+                    statement.execute("ALTER TABLE " + table + " ADD COLUMN version BIGINT DEFAULT 0 NOT NULL");
+                }
+            }
+        }
+    }
+}
@@ -1,20 +1,30 @@
 package ru.kata.spring.boot_security.demo.configs;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
-import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.provisioning.JdbcUserDetailsManager;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import ru.kata.spring.boot_security.demo.security.HashingBackpressureFilter;
+import ru.kata.spring.boot_security.demo.security.LoginRateLimitFilter;
+import ru.kata.spring.boot_security.demo.security.LoginRateLimiter;
+import ru.kata.spring.boot_security.demo.security.LoginMetricsFilter;
+import ru.kata.spring.boot_security.demo.security.SignedCookieSecurityContextRepository;
 import ru.kata.spring.boot_security.demo.service.UserService;
 
-import javax.sql.DataSource;
-
 @Configuration
 @EnableWebSecurity
 public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
@@ -22,12 +32,21 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
     private final SuccessUserHandler successUserHandler;
     private final UserService userService;
     private final PasswordEncoder passwordEncoder;
+    private final MeterRegistry meterRegistry;
+    private final LoginRateLimiter loginRateLimiter;
+    // Есть только при security.stateless.enabled=true
+    private final ObjectProvider<SignedCookieSecurityContextRepository> signedCookieRepository;
 
     @Autowired
-    public WebSecurityConfig(SuccessUserHandler successUserHandler, UserService userService, PasswordEncoder passwordEncoder) {
+    public WebSecurityConfig(SuccessUserHandler successUserHandler, UserService userService, PasswordEncoder passwordEncoder,
+                             MeterRegistry meterRegistry, LoginRateLimiter loginRateLimiter,
+                             ObjectProvider<SignedCookieSecurityContextRepository> signedCookieRepository) {
         this.successUserHandler = successUserHandler;
         this.userService = userService;
         this.passwordEncoder = passwordEncoder;
+        this.meterRegistry = meterRegistry;
+        this.loginRateLimiter = loginRateLimiter;
+        this.signedCookieRepository = signedCookieRepository;
     }
 
 
@@ -40,9 +59,16 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http
+                // Порядок важен: метрики входа должны видеть и ответы 429/503 от фильтров ниже
+                .addFilterBefore(new LoginMetricsFilter(meterRegistry), UsernamePasswordAuthenticationFilter.class)
+                .addFilterBefore(LoginRateLimitFilter.formLogin(loginRateLimiter), UsernamePasswordAuthenticationFilter.class)
+                .addFilterBefore(new HashingBackpressureFilter(), UsernamePasswordAuthenticationFilter.class)
                 .authorizeRequests()
                 .antMatchers("/", "/index").permitAll()
+                .antMatchers("/actuator/health/**").permitAll()
+                .antMatchers("/actuator/**").hasRole("ADMIN")
                 .antMatchers("/admin/**").hasRole("ADMIN")
+                .antMatchers("/api/**").hasRole("ADMIN")
                 .antMatchers("/user/**").hasAnyRole("USER", "ADMIN")
                 .anyRequest().authenticated()
                 .and()
@@ -52,32 +78,74 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
                 .logout()
                 .permitAll()
                 .and()
-                .exceptionHandling().accessDeniedPage("/403");
-    }
+                .exceptionHandling().accessDeniedPage("/403")
+                .and()
+                // API принимает только JSON, а такой запрос с чужого сайта браузер без CORS не отправит
+                .csrf().ignoringAntMatchers("/api/**");
 
+        SignedCookieSecurityContextRepository contextRepository = signedCookieRepository.getIfAvailable();
+        if (contextRepository != null) {
+            // Без HttpSession: вход хранится в подписанной куке, CSRF-токен — в своей
+            SimpleUrlAuthenticationFailureHandler failureHandler = new SimpleUrlAuthenticationFailureHandler("/login?error");
+            failureHandler.setAllowSessionCreation(false);
+            http
+                    .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                    .and()
+                    .securityContext().securityContextRepository(contextRepository)
+                    .and()
+                    .csrf().csrfTokenRepository(new CookieCsrfTokenRepository())
+                    .and()
+                    .formLogin().failureHandler(failureHandler);
+        }
+    }
 
-    //Создал админа при запуске чтобы с самого начала была возможность редачить всё
-    @Bean
-    public UserDetailsService userDetailsService(DataSource dataSource) {
-        JdbcUserDetailsManager jdbcUserDetailsManager = new JdbcUserDetailsManager(dataSource);
+    /**
+     * Отдельная цепочка для сборщика метрик Prometheus: HTTP Basic принимается только здесь,
+     * сессия не создаётся. Остальные адреса по-прежнему входят только через форму.
+     */
+    @Configuration
+    @Order(1)
+    public static class PrometheusSecurityConfig extends WebSecurityConfigurerAdapter {
 
-        if (!jdbcUserDetailsManager.userExists("admin")) {
-            jdbcUserDetailsManager.createUser(User.withUsername("admin")
-                    .password(passwordEncoder.encode("admin"))
-                    .roles("ADMIN", "USER")
-                    .build());
+        private final UserService userService;
+        private final PasswordEncoder passwordEncoder;
+        private final LoginRateLimiter loginRateLimiter;
 
-            String checkRoleQuery = "SELECT COUNT(*) FROM user_roles WHERE user_id = (SELECT id FROM users WHERE username = 'admin') AND role_id = (SELECT id FROM authorities WHERE authority = 'ROLE_ADMIN')";
-            int count = jdbcUserDetailsManager.getJdbcTemplate().queryForObject(checkRoleQuery, Integer.class);
+        @Autowired
+        public PrometheusSecurityConfig(UserService userService, PasswordEncoder passwordEncoder,
+                                        LoginRateLimiter loginRateLimiter) {
+            this.userService = userService;
+            this.passwordEncoder = passwordEncoder;
+            this.loginRateLimiter = loginRateLimiter;
+        }
 
-            if (count == 0) {
-                String insertRoleQuery = "INSERT INTO user_roles (user_id, role_id) VALUES " +
-                        "((SELECT id FROM users WHERE username = 'admin'), (SELECT id FROM authorities WHERE authority = 'ROLE_ADMIN'))";
-                jdbcUserDetailsManager.getJdbcTemplate().update(insertRoleQuery);
-            }
+        @Override
+        protected void configure(AuthenticationManagerBuilder auth) throws Exception {
+            auth.userDetailsService(userService)
+                    .passwordEncoder(passwordEncoder);
         }
 
-        return jdbcUserDetailsManager;
+        @Override
+        protected void configure(HttpSecurity http) throws Exception {
+            http
+                    .requestMatcher(new AntPathRequestMatcher("/actuator/prometheus"))
+                    .addFilterBefore(LoginRateLimitFilter.httpBasic(loginRateLimiter), BasicAuthenticationFilter.class)
+                    .authorizeRequests()
+                    .anyRequest().hasRole("ADMIN")
+                    .and()
+                    // Статус ставится сразу, без sendError: иначе страница ошибки пройдёт через основную
+                    // цепочку и сборщик получит редирект на форму входа вместо 401
+                    .httpBasic().authenticationEntryPoint((request, response, e) -> {
+                        response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Basic realm=\"prometheus\"");
+                        response.setStatus(HttpStatus.UNAUTHORIZED.value());
+                    })
+                    .and()
+                    .exceptionHandling()
+                    .accessDeniedHandler((request, response, e) -> response.setStatus(HttpStatus.FORBIDDEN.value()))
+                    .and()
+                    .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                    .and()
+                    .csrf().disable();
+        }
     }
-
-}
\ No newline at end of file
+}
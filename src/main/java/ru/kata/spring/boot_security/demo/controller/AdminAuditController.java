@@ -0,0 +1,47 @@
+package ru.kata.spring.boot_security.demo.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import ru.kata.spring.boot_security.demo.audit.AuditLogService;
+import ru.kata.spring.boot_security.demo.audit.AuditPage;
+
+import java.time.Instant;
+
+@RestController
+@Lazy
+@RequestMapping("/admin/audit")
+public class AdminAuditController {
+
+    private final AuditLogService auditLogService;
+    private final int pageSize;
+    private final int maxPageSize;
+
+    @Autowired
+    public AdminAuditController(AuditLogService auditLogService,
+                                @Value("${audit.page-size:100}") int pageSize,
+                                @Value("${audit.max-page-size:1000}") int maxPageSize) {
+        this.auditLogService = auditLogService;
+        this.pageSize = pageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    @GetMapping
+    public AuditPage auditLog(@RequestParam(value = "from", required = false) Instant from,
+                              @RequestParam(value = "to", required = false) Instant to,
+                              @RequestParam(value = "cursor", required = false) String cursor,
+                              @RequestParam(value = "size", required = false) Integer size) {
+        int limit = size != null ? Math.max(1, Math.min(size, maxPageSize)) : pageSize;
+        try {
+            return auditLogService.getPage(from, to, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
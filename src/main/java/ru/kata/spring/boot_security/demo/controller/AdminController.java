@@ -1,43 +1,117 @@
 package ru.kata.spring.boot_security.demo.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import ru.kata.spring.boot_security.demo.entity.User;
+import ru.kata.spring.boot_security.demo.security.PrincipalRefresher;
+import ru.kata.spring.boot_security.demo.security.UserPrincipal;
+import ru.kata.spring.boot_security.demo.service.BulkUserReport;
+import ru.kata.spring.boot_security.demo.service.BulkUserRequest;
+import ru.kata.spring.boot_security.demo.service.ChunkedUserPage;
+import ru.kata.spring.boot_security.demo.service.ImportReport;
 import ru.kata.spring.boot_security.demo.service.RoleService;
+import ru.kata.spring.boot_security.demo.service.UserBulkService;
+import ru.kata.spring.boot_security.demo.service.UserDataFormat;
+import ru.kata.spring.boot_security.demo.service.UserExportService;
+import ru.kata.spring.boot_security.demo.service.UserImportService;
+import ru.kata.spring.boot_security.demo.service.UserSearchIndex;
 import ru.kata.spring.boot_security.demo.service.UserService;
+import ru.kata.spring.boot_security.demo.service.UsernameAlreadyExistsException;
+import ru.kata.spring.boot_security.demo.service.UserSuggestion;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
 
 
 @Controller
+@Lazy
 @RequestMapping("/admin")
 public class AdminController {
 
     private final UserService userService;
     private final RoleService roleService;
+    private final UserImportService userImportService;
+    private final UserExportService userExportService;
+    private final UserSearchIndex userSearchIndex;
+    private final UserBulkService userBulkService;
+    private final PrincipalRefresher principalRefresher;
+    private final int pageSize;
+    private final int maxPageSize;
+    private final int renderChunkSize;
 
     @Autowired
-    public AdminController(UserService userService, RoleService roleService) {
+    public AdminController(UserService userService, RoleService roleService,
+                           UserImportService userImportService,
+                           UserExportService userExportService,
+                           UserSearchIndex userSearchIndex,
+                           UserBulkService userBulkService,
+                           PrincipalRefresher principalRefresher,
+                           @Value("${admin.users.page-size:50}") int pageSize,
+                           @Value("${admin.users.max-page-size:500}") int maxPageSize,
+                           @Value("${admin.users.render-chunk-size:100}") int renderChunkSize) {
         this.userService = userService;
         this.roleService = roleService;
+        this.userImportService = userImportService;
+        this.userExportService = userExportService;
+        this.userSearchIndex = userSearchIndex;
+        this.userBulkService = userBulkService;
+        this.principalRefresher = principalRefresher;
+        this.pageSize = pageSize;
+        this.maxPageSize = maxPageSize;
+        this.renderChunkSize = renderChunkSize;
     }
 
     @GetMapping()
-    public String adminPage(Model model, @AuthenticationPrincipal User authUser) {
-        model.addAttribute("authUser", authUser);
-        model.addAttribute("users", userService.getAllUsers());
+    public String adminPage(Model model,
+                            @RequestParam(value = "after", required = false) Long after,
+                            @RequestParam(value = "size", required = false) Integer size,
+                            HttpServletResponse response) {
+        int limit = size != null ? Math.max(1, Math.min(size, maxPageSize)) : pageSize;
+        // Таблица подгружается порциями во время отрисовки, готовая часть страницы сразу уходит клиенту
+        model.addAttribute("users", new ChunkedUserPage(userService::getUsersPage, after, limit, renderChunkSize,
+                () -> flush(response)));
+        model.addAttribute("pageSize", limit);
         model.addAttribute("user", new User());
         model.addAttribute("roles", roleService.getAllRoles());
         model.addAttribute("activeTab", "users");
         return "admin";
     }
 
+    @GetMapping("/users/search")
+    @ResponseBody
+    public List<UserSuggestion> searchUsers(@RequestParam("q") String query,
+                                            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return userSearchIndex.search(query, Math.min(limit, 50));
+    }
+
+    // ids или фильтр: {"action":"DISABLE","role":"USER","usernamePrefix":"test"}
+    @PostMapping(value = "/users/bulk", consumes = "application/json")
+    @ResponseBody
+    public BulkUserReport bulkUpdate(@RequestBody BulkUserRequest request,
+                                     @AuthenticationPrincipal UserPrincipal authUser) {
+        try {
+            return userBulkService.apply(request, authUser.getId());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
     @GetMapping("/edit/{id}")
     public String showEditUserForm(@PathVariable Long id, Model model) {
         userService.findById(id).ifPresent(user -> {
@@ -48,56 +122,126 @@ public class AdminController {
     }
 
 
+    @GetMapping("/user/{id}/edit-fragment")
+    public String editUserFragment(@PathVariable Long id, Model model) {
+        model.addAttribute("editUser", findUserOrNotFound(id));
+        model.addAttribute("roles", roleService.getAllRoles());
+        return "fragments/user-modals :: editModal";
+    }
+
+    @GetMapping("/user/{id}/delete-fragment")
+    public String deleteUserFragment(@PathVariable Long id, Model model) {
+        model.addAttribute("deleteUser", findUserOrNotFound(id));
+        model.addAttribute("roles", roleService.getAllRoles());
+        return "fragments/user-modals :: deleteModal";
+    }
+
+    private User findUserOrNotFound(Long id) {
+        return userService.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Пользователь не найден"));
+    }
+
+    private static void flush(HttpServletResponse response) {
+        try {
+            response.flushBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Снимок из сессии; перечитывается, только если users.version ушла вперёд
     @ModelAttribute("authUser")
-    public User getAuthUser(@AuthenticationPrincipal User authUser) {
-        return authUser;
+    public UserPrincipal getAuthUser(@AuthenticationPrincipal UserPrincipal authUser) {
+        return principalRefresher.refresh(authUser);
     }
 
 
+    // Запись выполняется асинхронно: поток Tomcat освобождается, пока BCrypt считает хэш
     @PostMapping("/save")
-    public String saveUser(@Valid @ModelAttribute("user") User user,
-                           BindingResult bindingResult,
-                           @RequestParam(value = "roleIds", required = false) List<Long> roleIds,
-                           RedirectAttributes redirectAttributes,
-                           Model model,
-                           @AuthenticationPrincipal User authUser) {
+    public Callable<String> saveUser(@Valid @ModelAttribute("user") User user,
+                                     BindingResult bindingResult,
+                                     @RequestParam(value = "roleIds", required = false) List<Long> roleIds,
+                                     RedirectAttributes redirectAttributes,
+                                     Model model) {
         if (bindingResult.hasErrors()) {
             model.addAttribute("roles", roleService.getAllRoles());
             model.addAttribute("activeTab", "newUser");
-            return "admin";
-        }
-
-        if (userService.existsByUsername(user.getUsername(), user.getId())) {
-            bindingResult.rejectValue("username", "error.user", "Этот логин уже используется!");
-            model.addAttribute("roles", roleService.getAllRoles());
-            model.addAttribute("activeTab", "newUser");
-            return "admin";
+            return () -> "admin";
         }
 
-        userService.saveUser(user, roleIds);
-        redirectAttributes.addFlashAttribute("authUser", authUser);
-        redirectAttributes.addFlashAttribute("clearTab", true);
-        return "redirect:/admin";
+        // Занятость логина проверяет сам saveUser, в той же транзакции, что и запись
+        return () -> {
+            try {
+                userService.saveUser(user, roleIds);
+            } catch (UsernameAlreadyExistsException e) {
+                bindingResult.rejectValue("username", "error.user", e.getMessage());
+                model.addAttribute("roles", roleService.getAllRoles());
+                model.addAttribute("activeTab", "newUser");
+                return "admin";
+            }
+            redirectAttributes.addFlashAttribute("clearTab", true);
+            return "redirect:/admin";
+        };
     }
 
 
     @PatchMapping("/user/{id}")
-    public String updateUser(@PathVariable Long id,
-                             @Valid @ModelAttribute("user") User user,
-                             BindingResult bindingResult,
-                             @RequestParam(value = "roleIds", required = false) List<Long> roleIds,
-                             RedirectAttributes redirectAttributes) {
+    public Callable<String> updateUser(@PathVariable Long id,
+                                       @Valid @ModelAttribute("user") User user,
+                                       BindingResult bindingResult,
+                                       @RequestParam(value = "roleIds", required = false) List<Long> roleIds,
+                                       RedirectAttributes redirectAttributes) {
         if (bindingResult.hasErrors()) {
             // Передаем ошибки валидации и ID пользователя для открытия модального окна
-            redirectAttributes.addFlashAttribute("org.springframework.validation.BindingResult.user", bindingResult);
-            redirectAttributes.addFlashAttribute("user", user);
+            user.setId(id);
+            redirectAttributes.addFlashAttribute("org.springframework.validation.BindingResult.editUser", bindingResult);
+            redirectAttributes.addFlashAttribute("editUser", user);
             redirectAttributes.addFlashAttribute("openEditModal", true);
+            return () -> "redirect:/admin";
+        }
+
+        return () -> {
+            try {
+                userService.updateUser(id, user, roleIds);
+            } catch (UsernameAlreadyExistsException e) {
+                user.setId(id);
+                bindingResult.rejectValue("username", "error.user", e.getMessage());
+                redirectAttributes.addFlashAttribute("org.springframework.validation.BindingResult.editUser", bindingResult);
+                redirectAttributes.addFlashAttribute("editUser", user);
+                redirectAttributes.addFlashAttribute("openEditModal", true);
+                return "redirect:/admin";
+            }
+            redirectAttributes.addFlashAttribute("message", "Пользователь успешно обновлен!");
             return "redirect:/admin";
+        };
+    }
+
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    @ResponseBody
+    public ImportReport importUsers(HttpServletRequest request) throws IOException {
+        try {
+            UserDataFormat format = UserDataFormat.fromMediaType(request.getContentType());
+            return userImportService.importUsers(request.getInputStream(), format);
+        } catch (IllegalArgumentException e) {
+            // Пустой файл или заголовок CSV без обязательных колонок: ошибка в запросе, а не на сервере
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         }
+    }
 
-        userService.updateUser(id, user, roleIds);
-        redirectAttributes.addFlashAttribute("message", "Пользователь успешно обновлен!");
-        return "redirect:/admin";
+    @GetMapping("/export")
+    public void exportUsers(@RequestParam(value = "format", defaultValue = "csv") String format,
+                            HttpServletResponse response) throws IOException {
+        UserDataFormat dataFormat;
+        try {
+            dataFormat = UserDataFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Неподдерживаемый формат: " + format);
+        }
+
+        response.setContentType(dataFormat.getMediaType() + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"users." + dataFormat.name().toLowerCase(Locale.ROOT) + "\"");
+        userExportService.export(response.getWriter(), dataFormat);
     }
 
     @DeleteMapping("/{id}")
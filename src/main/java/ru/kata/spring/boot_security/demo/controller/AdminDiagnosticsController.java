@@ -0,0 +1,90 @@
+package ru.kata.spring.boot_security.demo.controller;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.kata.spring.boot_security.demo.audit.AuditLogWriter;
+import ru.kata.spring.boot_security.demo.datasource.ReadWriteRoutingDataSource;
+import ru.kata.spring.boot_security.demo.diagnostics.SecondLevelCacheStats;
+import ru.kata.spring.boot_security.demo.diagnostics.SlowQuerySampler;
+import ru.kata.spring.boot_security.demo.security.LoginRateLimiter;
+import ru.kata.spring.boot_security.demo.security.PasswordHashingExecutor;
+import ru.kata.spring.boot_security.demo.security.PrincipalCache;
+import ru.kata.spring.boot_security.demo.service.UsernameFilter;
+
+import java.util.Map;
+
+@RestController
+@Lazy
+@RequestMapping("/admin/diagnostics")
+public class AdminDiagnosticsController {
+
+    private final PrincipalCache principalCache;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final UsernameFilter usernameFilter;
+    private final SlowQuerySampler slowQuerySampler;
+    private final ObjectProvider<ReadWriteRoutingDataSource> routingDataSource;
+    private final AuditLogWriter auditLogWriter;
+    private final LoginRateLimiter loginRateLimiter;
+    private final SecondLevelCacheStats secondLevelCacheStats;
+
+    @Autowired
+    public AdminDiagnosticsController(PrincipalCache principalCache, PasswordHashingExecutor passwordHashingExecutor,
+                                      UsernameFilter usernameFilter, SlowQuerySampler slowQuerySampler,
+                                      ObjectProvider<ReadWriteRoutingDataSource> routingDataSource,
+                                      AuditLogWriter auditLogWriter, LoginRateLimiter loginRateLimiter,
+                                      SecondLevelCacheStats secondLevelCacheStats) {
+        this.principalCache = principalCache;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.usernameFilter = usernameFilter;
+        this.slowQuerySampler = slowQuerySampler;
+        this.routingDataSource = routingDataSource;
+        this.auditLogWriter = auditLogWriter;
+        this.loginRateLimiter = loginRateLimiter;
+        this.secondLevelCacheStats = secondLevelCacheStats;
+    }
+
+    @GetMapping("/principal-cache")
+    public Map<String, Object> principalCache() {
+        return principalCache.stats();
+    }
+
+    @GetMapping("/second-level-cache")
+    public Map<String, Object> secondLevelCache() {
+        return secondLevelCacheStats.stats();
+    }
+
+    @GetMapping("/hashing-pool")
+    public Map<String, Object> hashingPool() {
+        return passwordHashingExecutor.stats();
+    }
+
+    @GetMapping("/login-limit")
+    public Map<String, Object> loginLimit() {
+        return loginRateLimiter.stats();
+    }
+
+    @GetMapping("/username-filter")
+    public Map<String, Object> usernameFilter() {
+        return usernameFilter.stats();
+    }
+
+    @GetMapping("/slow-queries")
+    public Map<String, Object> slowQueries() {
+        return slowQuerySampler.stats();
+    }
+
+    @GetMapping("/audit")
+    public Map<String, Object> audit() {
+        return auditLogWriter.stats();
+    }
+
+    @GetMapping("/datasource-routing")
+    public Map<String, Object> datasourceRouting() {
+        ReadWriteRoutingDataSource routing = routingDataSource.getIfAvailable();
+        return routing != null ? routing.stats() : Map.of("replica", "не настроена");
+    }
+}
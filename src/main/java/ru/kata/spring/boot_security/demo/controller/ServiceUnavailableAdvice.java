@@ -0,0 +1,38 @@
+package ru.kata.spring.boot_security.demo.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import ru.kata.spring.boot_security.demo.security.HashingCapacityExceededException;
+import ru.kata.spring.boot_security.demo.security.PasswordHashingExecutor;
+
+@ControllerAdvice
+public class ServiceUnavailableAdvice {
+
+    private final PasswordHashingExecutor hashingExecutor;
+
+    @Autowired
+    public ServiceUnavailableAdvice(PasswordHashingExecutor hashingExecutor) {
+        this.hashingExecutor = hashingExecutor;
+    }
+
+    @ExceptionHandler(HashingCapacityExceededException.class)
+    public ResponseEntity<String> hashingCapacityExceeded(HashingCapacityExceededException e) {
+        return serviceUnavailable(e.getRetryAfterSeconds(), e.getMessage());
+    }
+
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<String> taskRejected() {
+        return serviceUnavailable(hashingExecutor.getRetryAfterSeconds(), "Сервис перегружен, повторите попытку позже");
+    }
+
+    private ResponseEntity<String> serviceUnavailable(long retryAfterSeconds, String message) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(message);
+    }
+}
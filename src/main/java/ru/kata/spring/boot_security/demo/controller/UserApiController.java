@@ -0,0 +1,213 @@
+package ru.kata.spring.boot_security.demo.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+import ru.kata.spring.boot_security.demo.entity.User;
+import ru.kata.spring.boot_security.demo.service.RoleRegistry;
+import ru.kata.spring.boot_security.demo.service.UserPatch;
+import ru.kata.spring.boot_security.demo.service.UserResource;
+import ru.kata.spring.boot_security.demo.service.UserResourcePage;
+import ru.kata.spring.boot_security.demo.service.UserService;
+import ru.kata.spring.boot_security.demo.service.UsernameAlreadyExistsException;
+
+import javax.validation.Validator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * JSON API пользователей для внутренних инструментов. ETag строится по колонке version:
+ * If-None-Match проверяется запросом одних версий, и при 304 пользователи не загружаются и не сериализуются.
+ * PATCH и DELETE требуют If-Match, чтобы параллельные правки не перезаписывали друг друга.
+ */
+@RestController
+@Lazy
+@RequestMapping("/api/users")
+public class UserApiController {
+
+    private final UserService userService;
+    private final RoleRegistry roleRegistry;
+    private final Validator validator;
+    private final int pageSize;
+    private final int maxPageSize;
+
+    @Autowired
+    public UserApiController(UserService userService, RoleRegistry roleRegistry, Validator validator,
+                             @Value("${admin.users.page-size:50}") int pageSize,
+                             @Value("${admin.users.max-page-size:500}") int maxPageSize) {
+        this.userService = userService;
+        this.roleRegistry = roleRegistry;
+        this.validator = validator;
+        this.pageSize = pageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    @GetMapping
+    public UserResourcePage list(@RequestParam(value = "after", required = false) Long after,
+                                 @RequestParam(value = "size", required = false) Integer size,
+                                 WebRequest webRequest) {
+        int limit = size != null ? Math.max(1, Math.min(size, maxPageSize)) : pageSize;
+        // На одну запись больше, чтобы понять, есть ли следующая страница
+        Map<Long, Long> versions = userService.findVersionsAfter(after, limit + 1);
+        boolean hasNext = versions.size() > limit;
+        List<Long> ids = new ArrayList<>(versions.keySet());
+        if (hasNext) {
+            ids = ids.subList(0, limit);
+        }
+
+        StringBuilder state = new StringBuilder(ids.size() * 8).append(hasNext);
+        for (Long id : ids) {
+            state.append(',').append(id).append(':').append(versions.get(id));
+        }
+        if (webRequest.checkNotModified(DigestUtils.md5DigestAsHex(state.toString().getBytes(StandardCharsets.UTF_8)))) {
+            return null;
+        }
+
+        List<UserResource> users = userService.findAllWithRoles(ids).stream()
+                .map(UserResource::from)
+                .collect(Collectors.toList());
+        return new UserResourcePage(users, hasNext ? ids.get(ids.size() - 1) : null);
+    }
+
+    @GetMapping("/{id}")
+    public UserResource get(@PathVariable Long id, WebRequest webRequest) {
+        long version = userService.findVersion(id).orElseThrow(UserApiController::notFound);
+        if (webRequest.checkNotModified(String.valueOf(version))) {
+            return null;
+        }
+        return UserResource.from(userService.findById(id).orElseThrow(UserApiController::notFound));
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<UserResource> create(@RequestBody UserPatch body, UriComponentsBuilder uriBuilder) {
+        // Возраст тоже обязателен: у сущности null читается как 0 и не проходит @Min
+        if (body.getUsername() == null || body.getPassword() == null || body.getPassword().isEmpty()
+                || body.getAge() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Нужны логин, пароль и возраст");
+        }
+        validate(body);
+
+        User user = new User(body.getUsername(), body.getPassword(), body.getName(), body.getLastName(), body.getAge(),
+                body.getEnabled() == null || body.getEnabled());
+        User saved = userService.saveUser(user, body.getRoleIds());
+        return ResponseEntity.created(uriBuilder.path("/api/users/{id}").buildAndExpand(saved.getId()).toUri())
+                .eTag(String.valueOf(saved.getVersion()))
+                .body(UserResource.from(saved));
+    }
+
+    @PatchMapping(value = "/{id}", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/merge-patch+json"})
+    public ResponseEntity<UserResource> patch(@PathVariable Long id, @RequestBody UserPatch patch,
+                                              @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Long expectedVersion = expectedVersion(ifMatch);
+        validate(patch);
+
+        User user = userService.patchUser(id, patch, expectedVersion).orElseThrow(UserApiController::notFound);
+        return ResponseEntity.ok()
+                .eTag(String.valueOf(user.getVersion()))
+                .body(UserResource.from(user));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> delete(@PathVariable Long id,
+                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        if (!userService.deleteUser(id, expectedVersion(ifMatch))) {
+            throw notFound();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> versionMismatch() {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .body("Пользователь был изменён, получите актуальную версию");
+    }
+
+    @ExceptionHandler(UsernameAlreadyExistsException.class)
+    public ResponseEntity<String> usernameTaken(UsernameAlreadyExistsException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    // Логин заняли между проверкой и коммитом — сработало его ограничение уникальности; иначе другое нарушение
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<String> conflict(DataIntegrityViolationException e) {
+        if (UsernameAlreadyExistsException.isUsernameConflict(e)) {
+            return usernameTaken(new UsernameAlreadyExistsException());
+        }
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("Изменение противоречит текущим данным, повторите запрос");
+    }
+
+    /**
+     * Версия из If-Match: "*" — любая, без заголовка — 428, чужой или слабый ETag не совпадёт ни с одной версией.
+     */
+    private static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_REQUIRED, "Нужен заголовок If-Match");
+        }
+        String value = ifMatch.trim();
+        if ("*".equals(value)) {
+            return null;
+        }
+        if (value.length() > 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            try {
+                return Long.parseLong(value.substring(1, value.length() - 1));
+            } catch (NumberFormatException ignored) {
+                // ниже
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED);
+    }
+
+    // Те же ограничения, что и у формы: берутся из аннотаций сущности User
+    private void validate(UserPatch patch) {
+        List<String> errors = new ArrayList<>();
+        check(errors, "username", patch.getUsername());
+        check(errors, "name", patch.getName());
+        check(errors, "lastName", patch.getLastName());
+        check(errors, "age", patch.getAge());
+        if (patch.getRoleIds() != null) {
+            Set<Long> roleIds = new HashSet<>(patch.getRoleIds());
+            if (roleIds.contains(null) || roleRegistry.resolve(roleIds).size() != roleIds.size()) {
+                errors.add("Роль не найдена");
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.join("; ", errors));
+        }
+    }
+
+    private void check(List<String> errors, String property, Object value) {
+        if (value != null) {
+            validator.validateValue(User.class, property, value).forEach(violation -> errors.add(violation.getMessage()));
+        }
+    }
+
+    private static ResponseStatusException notFound() {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "Пользователь не найден");
+    }
+}
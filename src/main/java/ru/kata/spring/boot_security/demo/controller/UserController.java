@@ -1,33 +1,29 @@
 package ru.kata.spring.boot_security.demo.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
-import ru.kata.spring.boot_security.demo.entity.User;
-import ru.kata.spring.boot_security.demo.service.UserService;
-
-import java.util.Optional;
+import ru.kata.spring.boot_security.demo.security.PrincipalRefresher;
+import ru.kata.spring.boot_security.demo.security.UserPrincipal;
 
 @Controller
 @RequestMapping("/user")
 public class UserController {
 
-    private final UserService userService;
+    private final PrincipalRefresher principalRefresher;
 
     @Autowired
-    public UserController(UserService userService) {
-        this.userService = userService;
+    public UserController(PrincipalRefresher principalRefresher) {
+        this.principalRefresher = principalRefresher;
     }
 
+    // Страница рисуется по снимку из сессии, без загрузки пользователя с ролями
     @GetMapping()
-    public String userPage(Model model) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        Optional<User> user = userService.findByUsername(auth.getName());
-        user.ifPresent(value -> model.addAttribute("user", value));
+    public String userPage(Model model, @AuthenticationPrincipal UserPrincipal authUser) {
+        model.addAttribute("user", principalRefresher.refresh(authUser));
         return "user";
     }
 }
@@ -0,0 +1,93 @@
+package ru.kata.spring.boot_security.demo.datasource;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.QueryType;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryUtils;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Направляет readOnly-транзакции в реплику, всё остальное — в основную БД.
+ * Реплика не используется, пока отстаёт больше допустимого, и для запросов, закреплённых после записи.
+ * Записью считается выполненный на основной БД изменяющий запрос, а не сама пишущая транзакция.
+ * Должен стоять за LazyConnectionDataSourceProxy: признак readOnly известен только после начала транзакции.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica";
+
+    private final ReplicaLagMonitor lagMonitor;
+
+    private final LongAdder primaryWrites = new LongAdder();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder pinnedReads = new LongAdder();
+    private final LongAdder lagFallbackReads = new LongAdder();
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, ReplicaLagMonitor lagMonitor) {
+        Map<Object, Object> targets = new LinkedHashMap<>();
+        targets.put(PRIMARY, ProxyDataSourceBuilder.create(primary)
+                .name(PRIMARY)
+                .listener(new WriteListener())
+                .build());
+        targets.put(REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        this.lagMonitor = lagMonitor;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        if (ReadYourWrites.isPinned()) {
+            pinnedReads.increment();
+            return PRIMARY;
+        }
+        if (!lagMonitor.isReplicaUsable()) {
+            lagFallbackReads.increment();
+            return PRIMARY;
+        }
+        replicaReads.increment();
+        return REPLICA;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("primaryWrites", primaryWrites.sum());
+        result.put("replicaReads", replicaReads.sum());
+        result.put("pinnedReads", pinnedReads.sum());
+        result.put("lagFallbackReads", lagFallbackReads.sum());
+        result.put("replica", lagMonitor.stats());
+        return result;
+    }
+
+    // Закрепляем запрос только после того, как на основную БД реально ушёл INSERT/UPDATE/DELETE
+    private class WriteListener implements QueryExecutionListener {
+
+        @Override
+        public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        }
+
+        @Override
+        public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            for (QueryInfo queryInfo : queryInfoList) {
+                if (QueryUtils.getQueryType(queryInfo.getQuery()) != QueryType.SELECT) {
+                    ReadYourWrites.markWrite();
+                    primaryWrites.increment();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ru.kata.spring.boot_security.demo.datasource;
+
+/**
+ * Состояние текущего запроса для чтения собственных записей: закреплён ли он за основной БД
+ * и выполнялась ли в нём запись в основную БД. Переносится в поток асинхронного обработчика вместе с запросом.
+ */
+public final class ReadYourWrites {
+
+    private static final ThreadLocal<State> CURRENT = new ThreadLocal<>();
+
+    private ReadYourWrites() {
+    }
+
+    public static State bind(State state) {
+        State previous = CURRENT.get();
+        CURRENT.set(state);
+        return previous;
+    }
+
+    public static void restore(State previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    public static State current() {
+        return CURRENT.get();
+    }
+
+    static boolean isPinned() {
+        State state = CURRENT.get();
+        return state != null && state.pinned;
+    }
+
+    static void markWrite() {
+        State state = CURRENT.get();
+        if (state != null) {
+            state.wrote = true;
+        }
+    }
+
+    public static final class State {
+
+        private final boolean pinned;
+        private volatile boolean wrote;
+
+        public State(boolean pinned) {
+            this.pinned = pinned;
+        }
+
+        public boolean isPinned() {
+            return pinned;
+        }
+
+        public boolean hasWritten() {
+            return wrote;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ru.kata.spring.boot_security.demo.datasource;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * После запроса с записью закрепляет сессию за основной БД на время, за которое реплика должна догнать,
+ * чтобы следующий запрос (обычно редирект на /admin) увидел собственные изменения.
+ * Без сессии отметка переносится в короткоживущей cookie: ради неё сессия не создаётся.
+ */
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor, CallableProcessingInterceptor {
+
+    static final String PINNED_UNTIL = ReadYourWritesInterceptor.class.getName() + ".PINNED_UNTIL";
+    static final String PINNED_UNTIL_COOKIE = "RYW_PINNED_UNTIL";
+    private static final String STATE = ReadYourWritesInterceptor.class.getName() + ".STATE";
+    private static final String PREVIOUS = ReadYourWritesInterceptor.class.getName() + ".PREVIOUS";
+
+    private final long windowMillis;
+
+    public ReadYourWritesInterceptor(Duration window) {
+        this.windowMillis = window.toMillis();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // При повторной диспетчеризации после Callable состояние уже есть в запросе
+        ReadYourWrites.State state = (ReadYourWrites.State) request.getAttribute(STATE);
+        if (state == null) {
+            state = new ReadYourWrites.State(isPinned(request));
+            request.setAttribute(STATE, state);
+        }
+        request.setAttribute(PREVIOUS, ReadYourWrites.bind(state));
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                           ModelAndView modelAndView) {
+        // До отрисовки представления: редирект ещё не отправлен клиенту
+        ReadYourWrites.State state = (ReadYourWrites.State) request.getAttribute(STATE);
+        if (state == null || !state.hasWritten()) {
+            return;
+        }
+        long pinnedUntil = System.currentTimeMillis() + windowMillis;
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            session.setAttribute(PINNED_UNTIL, pinnedUntil);
+        } else {
+            String path = request.getContextPath();
+            ResponseCookie cookie = ResponseCookie.from(PINNED_UNTIL_COOKIE, Long.toString(pinnedUntil))
+                    .path(path.isEmpty() ? "/" : path)
+                    .maxAge(Math.max(1, windowMillis / 1000))
+                    .httpOnly(true)
+                    .secure(request.isSecure())
+                    .sameSite("Lax")
+                    .build();
+            response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+        }
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReadYourWrites.restore((ReadYourWrites.State) request.getAttribute(PREVIOUS));
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReadYourWrites.restore((ReadYourWrites.State) request.getAttribute(PREVIOUS));
+    }
+
+    @Override
+    public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+        ReadYourWrites.bind((ReadYourWrites.State) request.getAttribute(STATE, NativeWebRequest.SCOPE_REQUEST));
+    }
+
+    @Override
+    public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+        ReadYourWrites.restore(null);
+    }
+
+    private boolean isPinned(HttpServletRequest request) {
+        long now = System.currentTimeMillis();
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            Long pinnedUntil = (Long) session.getAttribute(PINNED_UNTIL);
+            if (pinnedUntil != null && pinnedUntil > now) {
+                return true;
+            }
+        }
+        Cookie cookie = WebUtils.getCookie(request, PINNED_UNTIL_COOKIE);
+        if (cookie == null) {
+            return false;
+        }
+        // Значение приходит от клиента: дальше окна вперёд не закрепляем
+        try {
+            long pinnedUntil = Long.parseLong(cookie.getValue());
+            return pinnedUntil > now && pinnedUntil <= now + windowMillis;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.kata.spring.boot_security.demo.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Оценивает отставание реплики по heartbeat-строке: основная БД периодически пишет в неё текущее время,
+ * а из реплики читается последнее доехавшее значение. Работает с любой СУБД и любой схемой репликации.
+ * Таблицу replica_heartbeat создаёт схема (V8 или ddl-auto), монитор только пишет в неё.
+ */
+public class ReplicaLagMonitor implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final long maxLagMillis;
+    private final Duration checkInterval;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile boolean replicaUsable;
+    private volatile long lastLagMillis = -1;
+    private volatile String lastError;
+
+    public ReplicaLagMonitor(DataSource primary, DataSource replica, Duration maxLag, Duration checkInterval) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+        this.maxLagMillis = maxLag.toMillis();
+        this.checkInterval = checkInterval;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        long interval = checkInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    public void check() {
+        try {
+            long now = System.currentTimeMillis();
+            if (primary.update("UPDATE replica_heartbeat SET beat_at = ? WHERE id = 1", now) == 0) {
+                primary.update("INSERT INTO replica_heartbeat (id, beat_at) VALUES (1, ?)", now);
+            }
+            Long replicated = replica.queryForObject("SELECT MAX(beat_at) FROM replica_heartbeat", Long.class);
+            long lag = replicated == null ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - replicated);
+            update(lag <= maxLagMillis, lag, null);
+        } catch (DataAccessException e) {
+            update(false, -1, e.getMostSpecificCause().getMessage());
+        }
+    }
+
+    private void update(boolean usable, long lag, String error) {
+        if (usable != replicaUsable) {
+            if (usable) {
+                log.info("Replica back in read rotation, lag {} ms", lag);
+            } else {
+                log.warn("Reads routed to primary: replica lag {} ms, error: {}", lag, error);
+            }
+        }
+        replicaUsable = usable;
+        lastLagMillis = lag;
+        lastError = error;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("usable", replicaUsable);
+        result.put("lagMs", lastLagMillis);
+        result.put("maxLagMs", maxLagMillis);
+        result.put("lastError", lastError);
+        return result;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+}
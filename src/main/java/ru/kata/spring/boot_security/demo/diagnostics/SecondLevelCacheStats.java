@@ -0,0 +1,99 @@
+package ru.kata.spring.boot_security.demo.diagnostics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.kata.spring.boot_security.demo.entity.CacheRegions;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Доля попаданий по регионам кэша второго уровня: gauge hibernate.second.level.cache.hit.ratio{region}
+ * и /admin/diagnostics/second-level-cache. Сами счётчики обращений публикует HibernateMetrics.
+ */
+@Component
+public class SecondLevelCacheStats implements MeterBinder {
+
+    private static final List<String> ENTITY_REGIONS =
+            List.of(CacheRegions.USERS, CacheRegions.USER_ROLES, CacheRegions.ROLES);
+    private static final List<String> QUERY_REGIONS = List.of(CacheRegions.USER_BY_USERNAME);
+
+    // Через provider: MeterBinder создаётся вместе с MeterRegistry, раньше EntityManagerFactory
+    private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
+    private volatile Statistics statistics;
+
+    @Autowired
+    public SecondLevelCacheStats(ObjectProvider<EntityManagerFactory> entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String region : ENTITY_REGIONS) {
+            bind(registry, region, false);
+        }
+        for (String region : QUERY_REGIONS) {
+            bind(registry, region, true);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (String region : ENTITY_REGIONS) {
+            result.put(region, regionStats(region, false));
+        }
+        for (String region : QUERY_REGIONS) {
+            result.put(region, regionStats(region, true));
+        }
+        return result;
+    }
+
+    private void bind(MeterRegistry registry, String region, boolean query) {
+        Gauge.builder("hibernate.second.level.cache.hit.ratio", this, stats -> hitRatio(stats.region(region, query)))
+                .tag("region", region)
+                .description("Доля попаданий в регион кэша второго уровня Hibernate")
+                .register(registry);
+    }
+
+    private Map<String, Object> regionStats(String region, boolean query) {
+        CacheRegionStatistics stats = region(region, query);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("hits", stats != null ? stats.getHitCount() : 0);
+        result.put("misses", stats != null ? stats.getMissCount() : 0);
+        result.put("puts", stats != null ? stats.getPutCount() : 0);
+        result.put("hitRatio", hitRatio(stats));
+        return result;
+    }
+
+    // Регион запросов появляется при первом кэшируемом запросе, до этого статистики нет
+    private CacheRegionStatistics region(String region, boolean query) {
+        Statistics current = statistics();
+        return query ? current.getQueryRegionStatistics(region) : current.getDomainDataRegionStatistics(region);
+    }
+
+    private Statistics statistics() {
+        Statistics current = statistics;
+        if (current == null) {
+            current = entityManagerFactory.getObject().unwrap(SessionFactory.class).getStatistics();
+            statistics = current;
+        }
+        return current;
+    }
+
+    private static double hitRatio(CacheRegionStatistics stats) {
+        if (stats == null) {
+            return 0;
+        }
+        long requests = stats.getHitCount() + stats.getMissCount();
+        return requests == 0 ? 0 : (double) stats.getHitCount() / requests;
+    }
+}
@@ -0,0 +1,36 @@
+package ru.kata.spring.boot_security.demo.diagnostics;
+
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Оборачивает DataSource прокси, который передаёт каждое выполнение запроса в SlowQuerySampler.
+ * Маршрутизирующие и делегирующие DataSource пропускаются: оборачиваются только конечные пулы.
+ */
+@Component
+public class SlowQueryDataSourcePostProcessor implements BeanPostProcessor {
+
+    private final SlowQuerySampler slowQuerySampler;
+
+    public SlowQueryDataSourcePostProcessor(SlowQuerySampler slowQuerySampler) {
+        this.slowQuerySampler = slowQuerySampler;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource && !(bean instanceof ProxyDataSource)
+                && !(bean instanceof AbstractRoutingDataSource) && !(bean instanceof DelegatingDataSource)) {
+            return ProxyDataSourceBuilder.create((DataSource) bean)
+                    .name(beanName)
+                    .listener(slowQuerySampler)
+                    .build();
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,241 @@
+package ru.kata.spring.boot_security.demo.diagnostics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Слушатель JDBC-запросов: таймер на каждую форму запроса (SQL без литералов) и журнал запросов дольше порога.
+ * Таймер помечается коротким id формы, а не текстом SQL; соответствие id и SQL — в stats().
+ * Значения параметров никогда не пишутся — только их типы.
+ */
+@Component
+public class SlowQuerySampler implements QueryExecutionListener, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger("slow-query");
+
+    private static final String BASE_PACKAGE = "ru.kata.spring.boot_security.demo.";
+    private static final String OTHER_SHAPE = "other";
+    private static final int MAX_SHAPE_LENGTH = 300;
+    private static final String START_NANOS = SlowQuerySampler.class.getName() + ".startNanos";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+    private final long thresholdNanos;
+    private final int maxShapes;
+    private final int recentSize;
+    private final LongSupplier nanoTime;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> recent = new ArrayDeque<>();
+    private volatile MeterRegistry registry;
+
+    @Autowired
+    public SlowQuerySampler(@Value("${diagnostics.slow-query.threshold:200ms}") Duration threshold,
+                            @Value("${diagnostics.slow-query.max-shapes:200}") int maxShapes,
+                            @Value("${diagnostics.slow-query.recent-size:100}") int recentSize) {
+        this(threshold, maxShapes, recentSize, System::nanoTime);
+    }
+
+    SlowQuerySampler(Duration threshold, int maxShapes, int recentSize, LongSupplier nanoTime) {
+        this.thresholdNanos = threshold.toNanos();
+        this.maxShapes = maxShapes;
+        this.recentSize = recentSize;
+        this.nanoTime = nanoTime;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        // datasource-proxy передаёт в afterQuery время в миллисекундах, а индексные запросы укладываются в доли миллисекунды
+        execInfo.addCustomValue(START_NANOS, nanoTime.getAsLong());
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        if (queryInfoList.isEmpty()) {
+            return;
+        }
+        Long startNanos = execInfo.getCustomValue(START_NANOS, Long.class);
+        long elapsed = startNanos != null
+                ? nanoTime.getAsLong() - startNanos
+                : TimeUnit.MILLISECONDS.toNanos(execInfo.getElapsedTime());
+        String shape = shape(queryInfoList.get(0).getQuery());
+
+        Timer timer = timer(shape);
+        if (timer != null) {
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+        }
+        if (elapsed >= thresholdNanos) {
+            recordSlow(execInfo, queryInfoList, shape, elapsed);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("thresholdMs", TimeUnit.NANOSECONDS.toMillis(thresholdNanos));
+        result.put("shapes", timers.entrySet().stream()
+                .sorted(Comparator.comparingDouble(
+                        (Map.Entry<String, Timer> entry) -> entry.getValue().totalTime(TimeUnit.MILLISECONDS)).reversed())
+                .map(entry -> shapeStats(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList()));
+        synchronized (recent) {
+            result.put("recent", new ArrayList<>(recent));
+        }
+        return result;
+    }
+
+    private void recordSlow(ExecutionInfo execInfo, List<QueryInfo> queryInfoList, String shape, long elapsed) {
+        String caller = caller();
+        String parameters = redactedParameters(queryInfoList.get(0));
+        double elapsedMs = elapsed / 1_000_000.0;
+
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("at", Instant.now().toString());
+        entry.put("elapsedMs", elapsedMs);
+        entry.put("statement", statementId(shape));
+        entry.put("sql", shape);
+        entry.put("parameters", parameters);
+        entry.put("batchSize", execInfo.isBatch() ? execInfo.getBatchSize() : 0);
+        entry.put("success", execInfo.isSuccess());
+        entry.put("caller", caller);
+        synchronized (recent) {
+            if (recent.size() == recentSize) {
+                recent.removeFirst();
+            }
+            recent.addLast(entry);
+        }
+
+        log.warn("{} ms [{}] {} {} params={} batch={}", String.format("%.1f", elapsedMs), caller,
+                entry.get("statement"), shape, parameters, entry.get("batchSize"));
+    }
+
+    private Timer timer(String shape) {
+        MeterRegistry current = registry;
+        if (current == null) {
+            return null;
+        }
+        // Число форм ограничено, чтобы случайный динамический SQL не раздул набор метрик.
+        // Без гистограммы: иначе каждая форма дала бы десятки рядов в Prometheus
+        String key = timers.containsKey(shape) || timers.size() < maxShapes ? shape : OTHER_SHAPE;
+        return timers.computeIfAbsent(key, sql -> Timer.builder("jdbc.statement")
+                .description("Время выполнения SQL по форме запроса")
+                .tag("statement", statementId(sql))
+                .publishPercentiles(0.5, 0.99)
+                .register(current));
+    }
+
+    private static Map<String, Object> shapeStats(String shape, Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("statement", statementId(shape));
+        result.put("sql", shape);
+        result.put("count", snapshot.count());
+        result.put("totalMs", snapshot.total(TimeUnit.MILLISECONDS));
+        result.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+        result.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            result.put("p" + Math.round(percentile.percentile() * 100) + "Ms", percentile.value(TimeUnit.MILLISECONDS));
+        }
+        return result;
+    }
+
+    static String shape(String sql) {
+        String shape = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        shape = STRING_LITERAL.matcher(shape).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = IN_LIST.matcher(shape).replaceAll("in (?...)");
+        return shape.length() > MAX_SHAPE_LENGTH ? shape.substring(0, MAX_SHAPE_LENGTH) + "..." : shape;
+    }
+
+    // Короткий устойчивый id формы для тега метрики; "other" остаётся как есть
+    static String statementId(String shape) {
+        if (OTHER_SHAPE.equals(shape)) {
+            return OTHER_SHAPE;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(shape.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue());
+    }
+
+    private static String redactedParameters(QueryInfo queryInfo) {
+        List<List<ParameterSetOperation>> parameters = queryInfo.getParametersList();
+        if (parameters.isEmpty()) {
+            return "[]";
+        }
+        return parameters.get(0).stream()
+                .map(operation -> {
+                    Object[] args = operation.getArgs();
+                    Object value = args.length > 1 ? args[1] : null;
+                    return value == null ? "null" : value.getClass().getSimpleName();
+                })
+                .collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    // Стек снимается только для медленных запросов: сервисный метод и метод репозитория
+    private static String caller() {
+        return StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE).walk(frames -> {
+            String repository = null;
+            for (StackWalker.StackFrame frame : (Iterable<StackWalker.StackFrame>) frames::iterator) {
+                Class<?> type = frame.getDeclaringClass();
+                if (repository == null && Proxy.isProxyClass(type)) {
+                    repository = repositoryName(type).map(name -> name + "." + frame.getMethodName()).orElse(null);
+                    continue;
+                }
+                String className = type.getName();
+                if (className.startsWith(BASE_PACKAGE) && !className.contains("$$")
+                        && !className.startsWith(BASE_PACKAGE + "diagnostics.")) {
+                    String method = type.getSimpleName() + "." + frame.getMethodName();
+                    return repository != null ? method + " -> " + repository : method;
+                }
+            }
+            return repository != null ? repository : "unknown";
+        });
+    }
+
+    private static Optional<String> repositoryName(Class<?> proxyClass) {
+        for (Class<?> type : proxyClass.getInterfaces()) {
+            if (type.getName().startsWith(BASE_PACKAGE)) {
+                return Optional.of(type.getSimpleName());
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,62 @@
+package ru.kata.spring.boot_security.demo.entity;
+
+import org.hibernate.annotations.Immutable;
+import ru.kata.spring.boot_security.demo.audit.AuditAction;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+// Только чтение: строки добавляет AuditLogWriter пачками через JDBC, журнал не изменяется
+@Entity
+@Immutable
+@Table(name = "audit_log",
+        indexes = @Index(name = "idx_audit_log_occurred_at", columnList = "occurred_at, id"))
+public class AuditRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "occurred_at", nullable = false)
+    private Instant occurredAt;
+
+    @Column(name = "actor", nullable = false)
+    private String actor;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "action", nullable = false, length = 32)
+    private AuditAction action;
+
+    @Column(name = "target_id")
+    private Long targetId;
+
+    @Column(name = "target_username")
+    private String targetUsername;
+
+    protected AuditRecord() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Instant getOccurredAt() {
+        return occurredAt;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    public AuditAction getAction() {
+        return action;
+    }
+
+    public Long getTargetId() {
+        return targetId;
+    }
+
+    public String getTargetUsername() {
+        return targetUsername;
+    }
+}
@@ -0,0 +1,15 @@
+package ru.kata.spring.boot_security.demo.entity;
+
+/**
+ * Регионы кэша второго уровня Hibernate. Все они создаются заранее в SecondLevelCacheConfig.
+ */
+public final class CacheRegions {
+
+    public static final String USERS = "users";
+    public static final String USER_ROLES = "users.roles";
+    public static final String ROLES = "roles";
+    public static final String USER_BY_USERNAME = "users.by-username";
+
+    private CacheRegions() {
+    }
+}
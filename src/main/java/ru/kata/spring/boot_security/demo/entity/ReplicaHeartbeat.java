@@ -0,0 +1,34 @@
+package ru.kata.spring.boot_security.demo.entity;
+
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+// Только описание схемы для ddl-auto (во Flyway-схеме — V8): строку пишет и читает ReplicaLagMonitor через JDBC
+@Entity
+@Immutable
+@Table(name = "replica_heartbeat")
+public class ReplicaHeartbeat {
+
+    @Id
+    @Column(name = "id", nullable = false)
+    private Integer id;
+
+    // Время записи на основной БД, мс от эпохи
+    @Column(name = "beat_at", nullable = false)
+    private long beatAt;
+
+    protected ReplicaHeartbeat() {
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public long getBeatAt() {
+        return beatAt;
+    }
+}
@@ -1,25 +1,39 @@
 package ru.kata.spring.boot_security.demo.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.security.core.GrantedAuthority;
 
 import javax.persistence.*;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 @Entity
-@Table(name = "authorities")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.ROLES)
+@Table(name = "authorities",
+        uniqueConstraints = @UniqueConstraint(name = "uk_authorities_authority", columnNames = "authority"))
 public class Role implements GrantedAuthority {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     @Column(name = "authority", nullable = false)
     private String authority;
-    @Column(name = "username", nullable = false)
-    private String username;
+
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long version;
 
     @ManyToMany(mappedBy = "roles")
     private Set<User> users = new HashSet<>();
 
+    public Role() {
+    }
+
+    public Role(String authority) {
+        this.authority = authority;
+    }
+
     public Long getId() {
         return id;
     }
@@ -28,6 +42,10 @@ public class Role implements GrantedAuthority {
         this.id = id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public Set<User> getUsers() {
         return users;
     }
@@ -44,4 +62,21 @@ public class Role implements GrantedAuthority {
         this.authority = name;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Role)) return false;
+        Role role = (Role) o;
+        return id != null && Objects.equals(id, role.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return authority;
+    }
 }
@@ -1,5 +1,8 @@
 package ru.kata.spring.boot_security.demo.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
@@ -8,6 +11,7 @@ import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
+import java.time.Instant;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -16,6 +20,9 @@ import java.util.stream.Collectors;
 
 @Entity
 @Table(name = "users")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.USERS)
+// UPDATE только по изменившимся колонкам, а не всей строкой
+@DynamicUpdate
 public class User implements UserDetails {
 
     @Id
@@ -49,7 +56,21 @@ public class User implements UserDetails {
     @Column(name = "password")
     private String password;
 
+    // Временная блокировка после серии неверных паролей, null — не заблокирован
+    @Column(name = "locked_until")
+    private Instant lockedUntil;
+
+    // Растёт при смене пароля, ролей или отключении: подписанные токены со старым значением отклоняются
+    @Column(name = "credentials_version", nullable = false, columnDefinition = "INT DEFAULT 0")
+    private int credentialsVersion;
+
+    // Оптимистическая блокировка и ETag в REST API; растёт и при изменении ролей
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long version;
+
     @ManyToMany(fetch = FetchType.LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.USER_ROLES)
     @JoinTable(
             name = "user_roles",
             joinColumns = @JoinColumn(name = "user_id"),
@@ -89,7 +110,7 @@ public class User implements UserDetails {
 
     @Override
     public boolean isAccountNonLocked() {
-        return true;
+        return lockedUntil == null || lockedUntil.isBefore(Instant.now());
     }
 
     @Override
@@ -164,6 +185,26 @@ public class User implements UserDetails {
         this.username = username;
     }
 
+    public Instant getLockedUntil() {
+        return lockedUntil;
+    }
+
+    public void setLockedUntil(Instant lockedUntil) {
+        this.lockedUntil = lockedUntil;
+    }
+
+    public int getCredentialsVersion() {
+        return credentialsVersion;
+    }
+
+    public void setCredentialsVersion(int credentialsVersion) {
+        this.credentialsVersion = credentialsVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,22 @@
+package ru.kata.spring.boot_security.demo.repositories;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.kata.spring.boot_security.demo.entity.AuditRecord;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface AuditRecordRepository extends JpaRepository<AuditRecord, Long> {
+
+    // Keyset-пагинация от новых к старым по индексу (occurred_at, id): курсор — последняя запись предыдущей страницы
+    @Query("SELECT a FROM AuditRecord a WHERE a.occurredAt >= :from " +
+            "AND (a.occurredAt < :beforeAt OR (a.occurredAt = :beforeAt AND a.id < :beforeId)) " +
+            "ORDER BY a.occurredAt DESC, a.id DESC")
+    List<AuditRecord> findPage(@Param("from") Instant from,
+                               @Param("beforeAt") Instant beforeAt,
+                               @Param("beforeId") Long beforeId,
+                               Pageable pageable);
+}
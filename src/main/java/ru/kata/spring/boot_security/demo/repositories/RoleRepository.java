@@ -3,8 +3,9 @@ package ru.kata.spring.boot_security.demo.repositories;
 import org.springframework.data.jpa.repository.JpaRepository;
 import ru.kata.spring.boot_security.demo.entity.Role;
 
+import java.util.Optional;
 
 
 public interface RoleRepository extends JpaRepository<Role, Long> {
-
+    Optional<Role> findByAuthority(String authority);
 }
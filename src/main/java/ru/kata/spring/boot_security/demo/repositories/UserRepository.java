@@ -1,17 +1,64 @@
 package ru.kata.spring.boot_security.demo.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import ru.kata.spring.boot_security.demo.entity.CacheRegions;
 import ru.kata.spring.boot_security.demo.entity.User;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 
 public interface UserRepository extends JpaRepository<User, Long> {
+    // Кэш запросов хранит только id; сама сущность и её роли берутся из кэша второго уровня
     @Query("SELECT u FROM User u LEFT JOIN FETCH u.roles WHERE u.username = :username")
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHE_REGION, value = CacheRegions.USER_BY_USERNAME)
+    })
     Optional<User> findByUsername(@Param("username") String username);
     void deleteByUsername(String username);
     Optional<User> findById(Long id);
 
+    // Проверки занятости логина: выбирают только id по индексу username, без загрузки сущности
+    boolean existsByUsername(String username);
+    boolean existsByUsernameAndIdNot(String username, Long id);
+
+
+    // Одно поле по первичному ключу: проверка подписанного токена входа без загрузки сущности
+    @Query("SELECT u.credentialsVersion FROM User u WHERE u.id = :id")
+    Optional<Integer> findCredentialsVersionById(@Param("id") Long id);
+
+    // Версии для условных запросов REST API: If-None-Match проверяется без загрузки пользователей и ролей
+    @Query("SELECT u.version FROM User u WHERE u.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("SELECT u.id, u.version FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<Object[]> findIdVersionsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Keyset-пагинация: сначала берём только id страницы, лимит применяется в SQL
+    @Query("SELECT u.id FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // ...затем одним запросом подгружаем пользователей страницы вместе с ролями
+    @Query("SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.roles WHERE u.id IN :ids ORDER BY u.id")
+    @QueryHints(@QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"))
+    List<User> findAllWithRolesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Плоские строки (пользователь × роль) без сущностей в persistence context; курсор читается порциями
+    @Query("SELECT u.id, u.username, u.name, u.lastName, u.age, u.enabled, r.authority " +
+            "FROM User u LEFT JOIN u.roles r ORDER BY u.id")
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "false")
+    })
+    Stream<Object[]> streamExportRows();
+
 }
@@ -0,0 +1,127 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Токен входа: base64url(снимок пользователя) + "." + base64url(HMAC-SHA256 от него).
+ * Снимок двоичный: id, версия учётных данных, версия записи, срок действия, логин, имя, фамилия, возраст, роли.
+ * Пароль и прочее, что не нужно для отрисовки страниц и проверки прав, в токен не попадает.
+ */
+final class AuthTokenCodec {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte FORMAT = 2;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+
+    AuthTokenCodec(byte[] secret) {
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+    }
+
+    String encode(UserPrincipal principal, long expiresAt) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeLong(principal.getId());
+            out.writeInt(principal.getCredentialsVersion());
+            out.writeLong(principal.getVersion());
+            out.writeLong(expiresAt);
+            out.writeUTF(principal.getUsername());
+            out.writeUTF(principal.getName() != null ? principal.getName() : "");
+            out.writeUTF(principal.getLastName() != null ? principal.getLastName() : "");
+            out.writeInt(principal.getAge());
+            out.writeByte(principal.getRoles().size());
+            for (String role : principal.getRoles()) {
+                out.writeUTF(role);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] payload = bytes.toByteArray();
+        return ENCODER.encodeToString(payload) + '.' + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * null — токен повреждён, подделан или истёк (expiresAt и now в секундах эпохи).
+     */
+    Token decode(String value, long now) {
+        int dot = value.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(value.substring(0, dot));
+            signature = DECODER.decode(value.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        // Сравнение за постоянное время
+        if (!MessageDigest.isEqual(sign(payload), signature)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (in.readByte() != FORMAT) {
+                return null;
+            }
+            long id = in.readLong();
+            int credentialsVersion = in.readInt();
+            long version = in.readLong();
+            long expiresAt = in.readLong();
+            if (expiresAt <= now) {
+                return null;
+            }
+            String username = in.readUTF();
+            String name = in.readUTF();
+            String lastName = in.readUTF();
+            int age = in.readInt();
+            int roleCount = in.readUnsignedByte();
+            List<String> roles = new ArrayList<>(roleCount);
+            for (int i = 0; i < roleCount; i++) {
+                roles.add(in.readUTF());
+            }
+            UserPrincipal principal = new UserPrincipal(id, username, null, name, lastName, age, true, null,
+                    credentialsVersion, version, roles);
+            return new Token(principal, expiresAt);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static final class Token {
+
+        final UserPrincipal principal;
+        final long expiresAt;
+
+        private Token(UserPrincipal principal, long expiresAt) {
+            this.principal = principal;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.FlashMap;
+import org.springframework.web.servlet.support.AbstractFlashMapManager;
+import org.springframework.web.util.WebUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Flash-атрибуты редиректа в куке вместо HttpSession (security.stateless.enabled=true),
+ * чтобы сообщение или ошибки формы дошли до следующего запроса на любом узле.
+ * Содержимое зашифровано AES-GCM ключом из security.stateless.secret: клиент его не читает и не подменяет,
+ * а десериализуется только то, что прошло проверку тега.
+ */
+@Component(DispatcherServlet.FLASH_MAP_MANAGER_BEAN_NAME)
+@ConditionalOnProperty(name = "security.stateless.enabled", havingValue = "true")
+public class CookieFlashMapManager extends AbstractFlashMapManager {
+
+    private static final Logger log = LoggerFactory.getLogger(CookieFlashMapManager.class);
+
+    private static final String COOKIE_NAME = "FLASH";
+    // Браузеры отбрасывают куки длиннее ~4 КБ вместе с именем и атрибутами
+    private static final int MAX_COOKIE_VALUE = 3800;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    private static final String FLASH_MAPS = CookieFlashMapManager.class.getName() + ".FLASH_MAPS";
+
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+
+    @Autowired
+    public CookieFlashMapManager(@Value("${security.stateless.secret:}") String secret,
+                                 @Value("${security.stateless.random-secret:false}") boolean randomSecret)
+            throws GeneralSecurityException {
+        this.key = new SecretKeySpec(keyBytes(secret, randomSecret), "AES");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected List<FlashMap> retrieveFlashMaps(HttpServletRequest request) {
+        // В одном запросе куку могли уже переписать: запрос её ещё видит старой
+        Object updated = request.getAttribute(FLASH_MAPS);
+        if (updated != null) {
+            return (List<FlashMap>) updated;
+        }
+        Cookie cookie = WebUtils.getCookie(request, COOKIE_NAME);
+        if (cookie == null || cookie.getValue().isEmpty()) {
+            return null;
+        }
+        try {
+            return (List<FlashMap>) deserialize(decrypt(Base64.getUrlDecoder().decode(cookie.getValue())));
+        } catch (IllegalArgumentException | GeneralSecurityException | IOException | ClassNotFoundException e) {
+            log.debug("Ignoring unreadable flash cookie: {}", e.toString());
+            return null;
+        }
+    }
+
+    @Override
+    protected void updateFlashMaps(List<FlashMap> flashMaps, HttpServletRequest request, HttpServletResponse response) {
+        request.setAttribute(FLASH_MAPS, new ArrayList<>(flashMaps));
+        if (flashMaps.isEmpty()) {
+            if (WebUtils.getCookie(request, COOKIE_NAME) != null) {
+                addCookie(request, response, "", 0);
+            }
+            return;
+        }
+        String value;
+        try {
+            value = Base64.getUrlEncoder().withoutPadding().encodeToString(encrypt(serialize(flashMaps)));
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Не удалось сохранить flash-атрибуты", e);
+        }
+        if (value.length() > MAX_COOKIE_VALUE) {
+            log.warn("Flash attributes dropped: {} chars do not fit in a cookie", value.length());
+            return;
+        }
+        addCookie(request, response, value, getFlashMapTimeout());
+    }
+
+    private void addCookie(HttpServletRequest request, HttpServletResponse response, String value, long maxAge) {
+        String path = request.getContextPath();
+        ResponseCookie cookie = ResponseCookie.from(COOKIE_NAME, value)
+                .path(path.isEmpty() ? "/" : path)
+                .maxAge(maxAge)
+                .httpOnly(true)
+                .secure(request.isSecure())
+                .sameSite("Lax")
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    private byte[] encrypt(byte[] plain) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+        byte[] sealed = cipher.doFinal(plain);
+        return ByteBuffer.allocate(iv.length + sealed.length).put(iv).put(sealed).array();
+    }
+
+    private byte[] decrypt(byte[] data) throws GeneralSecurityException {
+        if (data.length <= IV_BYTES) {
+            throw new GeneralSecurityException("Flash cookie is too short");
+        }
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, data, 0, IV_BYTES));
+        return cipher.doFinal(data, IV_BYTES, data.length - IV_BYTES);
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(data)))) {
+            return in.readObject();
+        }
+    }
+
+    // Отдельный ключ, а не сам секрет подписи токенов входа; случайный — только явно, как у токенов
+    private static byte[] keyBytes(String secret, boolean randomSecret) throws GeneralSecurityException {
+        if (secret == null || secret.isBlank()) {
+            if (!randomSecret) {
+                throw new IllegalStateException("security.stateless.secret не задан: flash-атрибуты не прочитаются " +
+                        "на другом узле (случайный ключ — только с security.stateless.random-secret=true)");
+            }
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            return random;
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update("flash-map:".getBytes(StandardCharsets.UTF_8));
+        return digest.digest(secret.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,61 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.kata.spring.boot_security.demo.repositories.UserRepository;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Текущие users.credentials_version для проверки подписанных токенов входа.
+ * На своём узле запись сбрасывается сразу при изменении; другие узлы увидят новое значение
+ * не позже чем через ttl, до тех пор обращений к БД нет.
+ */
+@Component
+public class CredentialsVersionCache {
+
+    private final UserRepository userRepository;
+    private final Cache<Long, Integer> cache;
+
+    @Autowired
+    public CredentialsVersionCache(UserRepository userRepository,
+                                   @Value("${security.stateless.version-cache.maximum-size:100000}") long maximumSize,
+                                   @Value("${security.stateless.version-cache.ttl:30s}") Duration ttl) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * null — пользователя нет.
+     */
+    public Integer get(long userId) {
+        // Отсутствующий пользователь не кэшируется: токен удалённого отклоняется, и кука тут же стирается
+        return cache.get(userId, id -> userRepository.findCredentialsVersionById(id).orElse(null));
+    }
+
+    /**
+     * Как и {@link PrincipalCache#evict}, удаляет записи сразу и ещё раз после завершения транзакции.
+     */
+    public void evict(Collection<Long> userIds) {
+        List<Long> ids = List.copyOf(userIds);
+        cache.invalidateAll(ids);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidateAll(ids);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Время обработки POST /login целиком с разбивкой по исходу: success, failure, throttled (429), rejected (503).
+ * Доли пароля и БД видны отдельно в security.password.hashing и user.service (loadUserByUsername).
+ */
+public class LoginMetricsFilter extends OncePerRequestFilter {
+
+    private static final RequestMatcher LOGIN = new AntPathRequestMatcher("/login", "POST");
+
+    private final MeterRegistry registry;
+
+    public LoginMetricsFilter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !LOGIN.matches(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Timer.Sample sample = Timer.start(registry);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            sample.stop(Timer.builder("security.login")
+                    .description("Время входа через форму")
+                    .tag("outcome", outcome(response))
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+    }
+
+    private static String outcome(HttpServletResponse response) {
+        if (response.getStatus() == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+            return "rejected";
+        }
+        if (response.getStatus() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            return "throttled";
+        }
+        // Обработчик неудачи по умолчанию перенаправляет на /login?error
+        String location = response.getHeader("Location");
+        if (response.getStatus() >= 400 || location == null || location.contains("/login?error")) {
+            return "failure";
+        }
+        return "success";
+    }
+}
@@ -0,0 +1,83 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.authentication.www.BasicAuthenticationConverter;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Отвечает 429 на попытку входа сверх лимита, не доходя до загрузки пользователя и BCrypt.
+ * Попытка — POST /login формы или, в цепочке с HTTP Basic, любой запрос с заголовком Authorization: Basic.
+ */
+public class LoginRateLimitFilter extends OncePerRequestFilter {
+
+    private static final RequestMatcher FORM_LOGIN = new AntPathRequestMatcher("/login", "POST");
+    private static final RequestMatcher HTTP_BASIC = request -> {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        return header != null && header.regionMatches(true, 0, "Basic ", 0, 6);
+    };
+    private static final BasicAuthenticationConverter BASIC_CONVERTER = new BasicAuthenticationConverter();
+
+    private final LoginRateLimiter rateLimiter;
+    private final RequestMatcher attempts;
+    private final Function<HttpServletRequest, String> usernames;
+
+    private LoginRateLimitFilter(LoginRateLimiter rateLimiter, RequestMatcher attempts,
+                                 Function<HttpServletRequest, String> usernames) {
+        this.rateLimiter = rateLimiter;
+        this.attempts = attempts;
+        this.usernames = usernames;
+    }
+
+    public static LoginRateLimitFilter formLogin(LoginRateLimiter rateLimiter) {
+        return new LoginRateLimitFilter(rateLimiter, FORM_LOGIN,
+                request -> request.getParameter(UsernamePasswordAuthenticationFilter.SPRING_SECURITY_FORM_USERNAME_KEY));
+    }
+
+    public static LoginRateLimitFilter httpBasic(LoginRateLimiter rateLimiter) {
+        return new LoginRateLimitFilter(rateLimiter, HTTP_BASIC, LoginRateLimitFilter::basicUsername);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !attempts.matches(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String username = usernames.apply(request);
+        long waitNanos = rateLimiter.tryAcquire(request.getRemoteAddr(), username);
+        if (waitNanos == 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1));
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write("Слишком много попыток входа, повторите позже");
+    }
+
+    // Неразборчивый заголовок отклонит BasicAuthenticationFilter, здесь считается только адрес
+    private static String basicUsername(HttpServletRequest request) {
+        try {
+            UsernamePasswordAuthenticationToken token = BASIC_CONVERTER.convert(request);
+            return token != null ? token.getName() : null;
+        } catch (AuthenticationException e) {
+            return null;
+        }
+    }
+}
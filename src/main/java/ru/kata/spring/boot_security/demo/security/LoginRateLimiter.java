@@ -0,0 +1,181 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.security.authentication.event.AuthenticationFailureBadCredentialsEvent;
+import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
+import org.springframework.stereotype.Component;
+import ru.kata.spring.boot_security.demo.service.UserService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограничение частоты попыток входа до проверки пароля: ведро токенов на адрес клиента и на логин.
+ * Вёдра живут в ограниченных по размеру кэшах и удаляются, когда снова заполнились бы целиком.
+ * Подряд идущие неверные пароли для одного логина временно блокируют учётную запись (users.locked_until).
+ * Успешный вход возвращает токен логина: иначе сборщик метрик, который входит по HTTP Basic
+ * на каждом запросе, исчерпал бы ведро своего логина.
+ */
+@Component
+public class LoginRateLimiter implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(LoginRateLimiter.class);
+
+    // Через provider: MeterBinder создаётся вместе с MeterRegistry, раньше UserService и его PasswordEncoder
+    private final ObjectProvider<UserService> userService;
+    private final Limit addressLimit;
+    private final Limit usernameLimit;
+    private final Cache<String, TokenBucket> byAddress;
+    private final Cache<String, TokenBucket> byUsername;
+    private final Cache<String, AtomicInteger> failures;
+    private final int lockoutThreshold;
+    private final Duration lockoutDuration;
+
+    private final LongAdder throttledByAddress = new LongAdder();
+    private final LongAdder throttledByUsername = new LongAdder();
+    private final LongAdder lockouts = new LongAdder();
+
+    @Autowired
+    public LoginRateLimiter(ObjectProvider<UserService> userService,
+                            @Value("${security.login-limit.address.burst:50}") int addressBurst,
+                            @Value("${security.login-limit.address.refill:1s}") Duration addressRefill,
+                            @Value("${security.login-limit.username.burst:5}") int usernameBurst,
+                            @Value("${security.login-limit.username.refill:30s}") Duration usernameRefill,
+                            @Value("${security.login-limit.maximum-keys:100000}") long maximumKeys,
+                            @Value("${security.login-limit.lockout.threshold:10}") int lockoutThreshold,
+                            @Value("${security.login-limit.lockout.window:15m}") Duration lockoutWindow,
+                            @Value("${security.login-limit.lockout.duration:15m}") Duration lockoutDuration) {
+        this.userService = userService;
+        this.addressLimit = new Limit(addressBurst, addressRefill);
+        this.usernameLimit = new Limit(usernameBurst, usernameRefill);
+        this.byAddress = buckets(addressLimit, maximumKeys);
+        this.byUsername = buckets(usernameLimit, maximumKeys);
+        this.failures = Caffeine.newBuilder()
+                .maximumSize(maximumKeys)
+                .expireAfterWrite(lockoutWindow)
+                .build();
+        this.lockoutThreshold = lockoutThreshold;
+        this.lockoutDuration = lockoutDuration;
+    }
+
+    /**
+     * 0 — попытку можно проверять; иначе через сколько наносекунд повторить.
+     */
+    public long tryAcquire(String address, String username) {
+        long now = System.nanoTime();
+        long wait = acquire(byAddress, address, addressLimit, now);
+        if (wait > 0) {
+            throttledByAddress.increment();
+            return wait;
+        }
+        if (username == null || username.isEmpty()) {
+            return 0;
+        }
+        wait = acquire(byUsername, key(username), usernameLimit, now);
+        if (wait > 0) {
+            throttledByUsername.increment();
+        }
+        return wait;
+    }
+
+    @EventListener
+    public void onBadCredentials(AuthenticationFailureBadCredentialsEvent event) {
+        String username = event.getAuthentication().getName();
+        if (username == null || username.isEmpty()) {
+            return;
+        }
+        String key = key(username);
+        AtomicInteger count = failures.get(key, k -> new AtomicInteger());
+        if (count.incrementAndGet() < lockoutThreshold) {
+            return;
+        }
+        Instant until = Instant.now().plus(lockoutDuration);
+        try {
+            if (userService.getObject().lockUntil(username, until)) {
+                lockouts.increment();
+                log.warn("Account {} locked until {} after {} failed logins", username, until, lockoutThreshold);
+            }
+            failures.invalidate(key);
+        } catch (OptimisticLockingFailureException e) {
+            // Пользователя как раз правят: счётчик остаётся, блокировка повторится на следующей неудаче
+            log.warn("Account {} was modified concurrently, lockout deferred", username);
+        }
+    }
+
+    @EventListener
+    public void onSuccess(AuthenticationSuccessEvent event) {
+        String key = key(event.getAuthentication().getName());
+        failures.invalidate(key);
+        TokenBucket bucket = byUsername.getIfPresent(key);
+        if (bucket != null) {
+            bucket.release(System.nanoTime(), usernameLimit.refillNanos);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("trackedAddresses", byAddress.estimatedSize());
+        result.put("trackedUsernames", byUsername.estimatedSize());
+        result.put("throttledByAddress", throttledByAddress.sum());
+        result.put("throttledByUsername", throttledByUsername.sum());
+        result.put("lockouts", lockouts.sum());
+        return result;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("security.login.throttled", throttledByAddress, LongAdder::sum)
+                .tag("key", "address")
+                .description("Попытки входа, отклонённые ограничителем частоты")
+                .register(registry);
+        FunctionCounter.builder("security.login.throttled", throttledByUsername, LongAdder::sum)
+                .tag("key", "username")
+                .register(registry);
+        FunctionCounter.builder("security.login.lockouts", lockouts, LongAdder::sum)
+                .register(registry);
+    }
+
+    private static long acquire(Cache<String, TokenBucket> buckets, String key, Limit limit, long now) {
+        TokenBucket bucket = buckets.get(key, k -> new TokenBucket(now));
+        return bucket.tryAcquire(now, limit.refillNanos, limit.burstNanos);
+    }
+
+    // Ведро, не тронутое дольше времени полного восполнения, ничем не отличается от нового
+    private static Cache<String, TokenBucket> buckets(Limit limit, long maximumKeys) {
+        return Caffeine.newBuilder()
+                .maximumSize(maximumKeys)
+                .expireAfterAccess(Duration.ofNanos(limit.burstNanos))
+                .build();
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Limit {
+
+        private final long refillNanos;
+        private final long burstNanos;
+
+        private Limit(int burst, Duration refill) {
+            this.refillNanos = refill.toNanos();
+            this.burstNanos = Math.max(1, burst) * refillNanos;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Отдельный пул для BCrypt: не больше одного хэша на ядро, ограниченная очередь
+ * и быстрый отказ при переполнении вместо ожидания на потоках Tomcat.
+ * Массовые операции (импорт) хэшируют в своём меньшем пуле и не занимают потоки и очередь входа.
+ */
+@Component
+public class PasswordHashingExecutor implements MeterBinder {
+
+    private static final String THREAD_PREFIX = "password-hash-";
+    private static final String BULK_THREAD_PREFIX = THREAD_PREFIX + "bulk-";
+    private static final ThreadLocal<Boolean> RUNNING_INLINE = ThreadLocal.withInitial(() -> false);
+
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor bulkExecutor;
+    private final long retryAfterSeconds;
+    private final LongAdder rejected = new LongAdder();
+
+    public PasswordHashingExecutor(@Value("${security.hashing.pool-size:0}") int poolSize,
+                                   @Value("${security.hashing.queue-capacity:64}") int queueCapacity,
+                                   @Value("${security.hashing.retry-after:2s}") Duration retryAfter,
+                                   @Value("${security.hashing.bulk-pool-size:0}") int bulkPoolSize) {
+        int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        this.executor = pool(threads, queueCapacity, THREAD_PREFIX);
+        // По умолчанию половина потоков входа: импорт не отнимает больше половины ядер
+        int bulkThreads = bulkPoolSize > 0 ? bulkPoolSize : Math.max(1, threads / 2);
+        this.bulkExecutor = pool(bulkThreads, bulkThreads, BULK_THREAD_PREFIX);
+        this.retryAfterSeconds = Math.max(1, retryAfter.getSeconds());
+    }
+
+    public <T> T call(Supplier<T> task) {
+        // Задачи, уже выполняющиеся в пуле, не ставим в очередь повторно
+        if (RUNNING_INLINE.get() || Thread.currentThread().getName().startsWith(THREAD_PREFIX)) {
+            return task.get();
+        }
+
+        Future<T> future;
+        try {
+            future = executor.submit(task::get);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new HashingCapacityExceededException(retryAfterSeconds);
+        }
+
+        return await(future);
+    }
+
+    /**
+     * Обрабатывает список частями по числу потоков пула массовых операций. Части, которые пул не принял,
+     * выполняются в вызывающем потоке — это естественное ограничение скорости для массовых операций.
+     */
+    public <S, T> List<T> mapInParallel(List<S> items, Function<S, T> mapper) {
+        int threads = bulkExecutor.getMaximumPoolSize();
+        int sliceSize = Math.max(1, (items.size() + threads - 1) / threads);
+        List<Future<List<T>>> futures = new ArrayList<>();
+        List<T> result = new ArrayList<>(items.size());
+
+        for (int from = 0; from < items.size(); from += sliceSize) {
+            List<S> slice = items.subList(from, Math.min(items.size(), from + sliceSize));
+            Callable<List<T>> task = () -> slice.stream().map(mapper).collect(Collectors.toList());
+            try {
+                futures.add(bulkExecutor.submit(task));
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                futures.add(CompletableFuture.completedFuture(runInline(slice, mapper)));
+            }
+        }
+
+        for (Future<List<T>> future : futures) {
+            result.addAll(await(future));
+        }
+        return result;
+    }
+
+    private static ThreadPoolExecutor pool(int threads, int queueCapacity, String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private <S, T> List<T> runInline(List<S> slice, Function<S, T> mapper) {
+        RUNNING_INLINE.set(true);
+        try {
+            return slice.stream().map(mapper).collect(Collectors.toList());
+        } finally {
+            RUNNING_INLINE.remove();
+        }
+    }
+
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Хэширование пароля прервано", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("poolSize", executor.getMaximumPoolSize());
+        result.put("active", executor.getActiveCount());
+        result.put("queued", executor.getQueue().size());
+        result.put("queueCapacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        result.put("completed", executor.getCompletedTaskCount());
+        result.put("rejected", rejected.sum());
+        result.put("bulkPoolSize", bulkExecutor.getMaximumPoolSize());
+        result.put("bulkActive", bulkExecutor.getActiveCount());
+        return result;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("security.hashing.pool.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Потоки, занятые хэшированием")
+                .register(registry);
+        Gauge.builder("security.hashing.pool.size", executor, ThreadPoolExecutor::getMaximumPoolSize)
+                .register(registry);
+        Gauge.builder("security.hashing.queue.size", executor, pool -> pool.getQueue().size())
+                .description("Задачи хэширования в очереди")
+                .register(registry);
+        Gauge.builder("security.hashing.queue.remaining", executor, pool -> pool.getQueue().remainingCapacity())
+                .register(registry);
+        Gauge.builder("security.hashing.bulk.pool.active", bulkExecutor, ThreadPoolExecutor::getActiveCount)
+                .description("Потоки, занятые хэшированием для импорта")
+                .register(registry);
+        FunctionCounter.builder("security.hashing.rejected", rejected, LongAdder::sum)
+                .description("Отказы из-за переполненной очереди хэширования")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        bulkExecutor.shutdown();
+    }
+}
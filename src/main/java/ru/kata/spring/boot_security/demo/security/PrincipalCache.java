@@ -0,0 +1,94 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Ограниченный по размеру и времени жизни кэш снимков пользователей для аутентификации.
+ */
+@Component
+public class PrincipalCache implements MeterBinder {
+
+    private final Cache<String, UserPrincipal> cache;
+    private final LongAdder invalidations = new LongAdder();
+
+    public PrincipalCache(@Value("${security.principal-cache.maximum-size:10000}") long maximumSize,
+                          @Value("${security.principal-cache.ttl:5m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    public UserPrincipal get(String username, Function<String, UserPrincipal> loader) {
+        return cache.get(key(username), key -> loader.apply(username));
+    }
+
+    /**
+     * Удаляет записи сразу и ещё раз после завершения текущей транзакции,
+     * чтобы параллельный вход не успел закэшировать незакоммиченное состояние.
+     */
+    public void evict(String... usernames) {
+        invalidate(usernames);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(usernames);
+                }
+            });
+        }
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+        invalidations.increment();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "principal-cache");
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("invalidations", invalidations.sum());
+        return result;
+    }
+
+    private void invalidate(String... usernames) {
+        for (String username : usernames) {
+            if (username != null) {
+                cache.invalidate(key(username));
+                invalidations.increment();
+            }
+        }
+    }
+
+    // Логины сравниваются без учёта регистра (collation utf8mb4_unicode_ci)
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
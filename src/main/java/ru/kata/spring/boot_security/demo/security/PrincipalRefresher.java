@@ -0,0 +1,48 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import ru.kata.spring.boot_security.demo.service.UserService;
+
+/**
+ * Страницы рисуются по снимку из SecurityContext. Перед отрисовкой сверяется только users.version;
+ * если запись изменилась, снимок перечитывается и заменяется в контексте, а с ним в сессии или токене.
+ */
+@Component
+public class PrincipalRefresher {
+
+    private final UserService userService;
+
+    @Autowired
+    public PrincipalRefresher(UserService userService) {
+        this.userService = userService;
+    }
+
+    public UserPrincipal refresh(UserPrincipal principal) {
+        if (principal == null) {
+            return null;
+        }
+        // Только «больше»: отстающая реплика вернёт старую версию, и снимок не будет перечитываться зря.
+        // Удалённый пользователь остаётся со своим снимком до выхода
+        long version = userService.findVersion(principal.getId()).orElse(principal.getVersion());
+        if (version <= principal.getVersion()) {
+            return principal;
+        }
+        UserPrincipal fresh = userService.findById(principal.getId())
+                .map(UserPrincipal::from)
+                .orElse(principal);
+        SecurityContext context = SecurityContextHolder.getContext();
+        Authentication current = context.getAuthentication();
+        if (fresh != principal && current != null && current.getPrincipal() == principal) {
+            UsernamePasswordAuthenticationToken updated =
+                    new UsernamePasswordAuthenticationToken(fresh, current.getCredentials(), fresh.getAuthorities());
+            updated.setDetails(current.getDetails());
+            context.setAuthentication(updated);
+        }
+        return fresh;
+    }
+}
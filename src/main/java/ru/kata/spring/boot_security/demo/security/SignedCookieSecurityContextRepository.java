@@ -0,0 +1,188 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+import org.springframework.security.web.context.SaveContextOnUpdateOrErrorResponseWrapper;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Хранит SecurityContext в подписанной куке вместо HttpSession (security.stateless.enabled=true).
+ * Проверка на каждом запросе — HMAC и сравнение версии учётных данных с {@link CredentialsVersionCache},
+ * поэтому узлы не делят состояние и не нужны липкие сессии. Смена пароля или ролей увеличивает
+ * users.credentials_version, и выданные раньше токены перестают приниматься.
+ */
+@Component
+@ConditionalOnProperty(name = "security.stateless.enabled", havingValue = "true")
+public class SignedCookieSecurityContextRepository implements SecurityContextRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(SignedCookieSecurityContextRepository.class);
+
+    private static final int MIN_SECRET_BYTES = 32;
+    private static final String TOKEN = SignedCookieSecurityContextRepository.class.getName() + ".TOKEN";
+    private static final String REJECTED = SignedCookieSecurityContextRepository.class.getName() + ".REJECTED";
+    private static final String CHECKED = SignedCookieSecurityContextRepository.class.getName() + ".CHECKED";
+
+    private final CredentialsVersionCache credentialsVersions;
+    private final AuthTokenCodec codec;
+    private final long ttlSeconds;
+    private final String cookieName;
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+    @Autowired
+    public SignedCookieSecurityContextRepository(CredentialsVersionCache credentialsVersions,
+                                                 @Value("${security.stateless.secret:}") String secret,
+                                                 @Value("${security.stateless.random-secret:false}") boolean randomSecret,
+                                                 @Value("${security.stateless.ttl:8h}") Duration ttl,
+                                                 @Value("${security.stateless.cookie-name:AUTH}") String cookieName) {
+        this.credentialsVersions = credentialsVersions;
+        this.codec = new AuthTokenCodec(secretBytes(secret, randomSecret));
+        this.ttlSeconds = ttl.getSeconds();
+        this.cookieName = cookieName;
+    }
+
+    @Override
+    public SecurityContext loadContext(HttpRequestResponseHolder requestResponseHolder) {
+        HttpServletRequest request = requestResponseHolder.getRequest();
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        // Повторная диспетчеризация (например, на /error) не проверяет куку заново
+        if (request.getAttribute(CHECKED) == null) {
+            request.setAttribute(CHECKED, Boolean.TRUE);
+            Cookie cookie = WebUtils.getCookie(request, cookieName);
+            if (cookie != null) {
+                AuthTokenCodec.Token token = verify(cookie.getValue());
+                if (token != null) {
+                    request.setAttribute(TOKEN, token);
+                } else {
+                    request.setAttribute(REJECTED, Boolean.TRUE);
+                }
+            }
+        }
+        AuthTokenCodec.Token token = (AuthTokenCodec.Token) request.getAttribute(TOKEN);
+        if (token != null) {
+            UserPrincipal principal = token.principal;
+            context.setAuthentication(
+                    new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+        }
+        // Кука ставится до фиксации ответа: после входа и выхода сразу идёт редирект
+        requestResponseHolder.setResponse(new SaveToCookieResponseWrapper(requestResponseHolder.getResponse(), request));
+        return context;
+    }
+
+    @Override
+    public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+        SaveToCookieResponseWrapper wrapper = WebUtils.getNativeResponse(response, SaveToCookieResponseWrapper.class);
+        if (wrapper == null) {
+            write(context, request, response);
+        } else if (!wrapper.isContextSaved()) {
+            wrapper.saveContext(context);
+        }
+    }
+
+    @Override
+    public boolean containsContext(HttpServletRequest request) {
+        return WebUtils.getCookie(request, cookieName) != null;
+    }
+
+    private AuthTokenCodec.Token verify(String value) {
+        AuthTokenCodec.Token token = codec.decode(value, Instant.now().getEpochSecond());
+        if (token == null) {
+            return null;
+        }
+        Integer current = credentialsVersions.get(token.principal.getId());
+        return current != null && current == token.principal.getCredentialsVersion() ? token : null;
+    }
+
+    private void write(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+        Authentication authentication = context.getAuthentication();
+        AuthTokenCodec.Token current = (AuthTokenCodec.Token) request.getAttribute(TOKEN);
+        if (authentication == null || trustResolver.isAnonymous(authentication)
+                || !(authentication.getPrincipal() instanceof UserPrincipal)) {
+            // Выход или отклонённый токен
+            if (current != null || request.getAttribute(REJECTED) != null) {
+                request.removeAttribute(TOKEN);
+                request.removeAttribute(REJECTED);
+                addCookie(request, response, "", 0);
+            }
+            return;
+        }
+
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        long now = Instant.now().getEpochSecond();
+        // Тот же снимок пользователя с токеном, прожившим меньше половины срока, — куку не переписываем
+        if (current != null && current.principal.equals(principal)
+                && current.principal.getVersion() == principal.getVersion()
+                && current.expiresAt - now > ttlSeconds / 2) {
+            return;
+        }
+        addCookie(request, response, codec.encode(principal, now + ttlSeconds), ttlSeconds);
+    }
+
+    private void addCookie(HttpServletRequest request, HttpServletResponse response, String value, long maxAge) {
+        String path = request.getContextPath();
+        ResponseCookie cookie = ResponseCookie.from(cookieName, value)
+                .path(path.isEmpty() ? "/" : path)
+                .maxAge(maxAge)
+                .httpOnly(true)
+                .secure(request.isSecure())
+                .sameSite("Lax")
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    // Без общего секрета узлы не принимают токены друг друга: это допустимо только явно, для разработки на одном узле
+    private static byte[] secretBytes(String secret, boolean randomSecret) {
+        if (secret == null || secret.isBlank()) {
+            if (!randomSecret) {
+                throw new IllegalStateException("security.stateless.secret не задан: нужен общий для всех узлов секрет " +
+                        "(случайный ключ — только с security.stateless.random-secret=true)");
+            }
+            byte[] random = new byte[MIN_SECRET_BYTES];
+            new SecureRandom().nextBytes(random);
+            log.warn("security.stateless.secret is not set, using a random key: tokens will not survive a restart " +
+                    "and will not be accepted by other nodes");
+            return random;
+        }
+        byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("security.stateless.secret должен быть не короче " + MIN_SECRET_BYTES + " байт");
+        }
+        return bytes;
+    }
+
+    private final class SaveToCookieResponseWrapper extends SaveContextOnUpdateOrErrorResponseWrapper {
+
+        private final HttpServletRequest request;
+
+        private SaveToCookieResponseWrapper(HttpServletResponse response, HttpServletRequest request) {
+            super(response, true);
+            this.request = request;
+        }
+
+        @Override
+        protected void saveContext(SecurityContext context) {
+            write(context, request, (HttpServletResponse) getResponse());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ведро токенов в виде одного AtomicLong (GCRA): хранится момент, когда ведро снова станет полным.
+ * Каждая попытка сдвигает его на refillNanos; если он уходит дальше, чем на burst токенов вперёд,
+ * попытка отклоняется. Без блокировок и без отдельного счётчика токенов.
+ */
+final class TokenBucket {
+
+    private final AtomicLong fullAt;
+
+    TokenBucket(long nowNanos) {
+        this.fullAt = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * 0 — токен взят; иначе через сколько наносекунд появится следующий.
+     */
+    long tryAcquire(long nowNanos, long refillNanos, long burstNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nowNanos) + refillNanos;
+            long ahead = next - nowNanos;
+            if (ahead > burstNanos) {
+                return ahead - burstNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Возвращает один токен, взятый раньше. Полное ведро не переполняется.
+     */
+    void release(long nowNanos, long refillNanos) {
+        while (true) {
+            long current = fullAt.get();
+            if (current <= nowNanos) {
+                return;
+            }
+            if (fullAt.compareAndSet(current, Math.max(nowNanos, current - refillNanos))) {
+                return;
+            }
+        }
+    }
+}
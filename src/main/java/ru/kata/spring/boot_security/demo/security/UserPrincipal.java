@@ -0,0 +1,157 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import ru.kata.spring.boot_security.demo.entity.Role;
+import ru.kata.spring.boot_security.demo.entity.User;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Неизменяемый снимок пользователя, который хранится в кэше и в SecurityContext
+ * вместо JPA-сущности.
+ */
+public final class UserPrincipal implements UserDetails {
+
+    private final Long id;
+    private final String username;
+    private final String password;
+    private final String name;
+    private final String lastName;
+    private final int age;
+    private final boolean enabled;
+    private final Instant lockedUntil;
+    private final int credentialsVersion;
+    private final long version;
+    private final Set<String> roles;
+    private final List<GrantedAuthority> authorities;
+
+    public UserPrincipal(Long id, String username, String password, String name, String lastName,
+                         int age, boolean enabled, Instant lockedUntil, int credentialsVersion, long version,
+                         Collection<String> roles) {
+        this.id = id;
+        this.username = username;
+        this.password = password;
+        this.name = name;
+        this.lastName = lastName;
+        this.age = age;
+        this.enabled = enabled;
+        this.lockedUntil = lockedUntil;
+        this.credentialsVersion = credentialsVersion;
+        this.version = version;
+        this.roles = Collections.unmodifiableSet(new LinkedHashSet<>(roles));
+        this.authorities = this.roles.stream()
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    public static UserPrincipal from(User user) {
+        List<String> roles = user.getRoles().stream()
+                .map(Role::getAuthority)
+                .sorted()
+                .collect(Collectors.toList());
+        return new UserPrincipal(user.getId(), user.getUsername(), user.getPassword(), user.getName(),
+                user.getLastName(), user.getAge(), user.isEnabled(), user.getLockedUntil(),
+                user.getCredentialsVersion(), user.getVersion(), roles);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public int getCredentialsVersion() {
+        return credentialsVersion;
+    }
+
+    // users.version на момент снимка: по нему видно, что запись изменилась и снимок пора обновить
+    public long getVersion() {
+        return version;
+    }
+
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    public String rolesToString() {
+        return String.join(", ", roles);
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        // Сравнение с текущим временем: блокировка снимается сама, без сброса кэша
+        return lockedUntil == null || lockedUntil.isBefore(Instant.now());
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UserPrincipal)) return false;
+        UserPrincipal that = (UserPrincipal) o;
+        return Objects.equals(id, that.id) && Objects.equals(username, that.username);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, username);
+    }
+
+    @Override
+    public String toString() {
+        return "UserPrincipal{" +
+                "id=" + id +
+                ", username='" + username + '\'' +
+                ", enabled=" + enabled +
+                ", roles=" + roles +
+                '}';
+    }
+}
@@ -0,0 +1,11 @@
+package ru.kata.spring.boot_security.demo.service;
+
+public enum BulkUserAction {
+    ENABLE,
+    DISABLE,
+    DELETE,
+    // Заменить роли на roleIds
+    SET_ROLES,
+    ADD_ROLES,
+    REMOVE_ROLES
+}
@@ -0,0 +1,44 @@
+package ru.kata.spring.boot_security.demo.service;
+
+public class BulkUserReport {
+
+    private final BulkUserAction action;
+    private long matched;
+    private long affected;
+    private int chunks;
+    private long durationMs;
+
+    public BulkUserReport(BulkUserAction action) {
+        this.action = action;
+    }
+
+    void chunkApplied(int matched, int affected) {
+        this.matched += matched;
+        this.affected += affected;
+        this.chunks++;
+    }
+
+    void finish(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public BulkUserAction getAction() {
+        return action;
+    }
+
+    public long getMatched() {
+        return matched;
+    }
+
+    public long getAffected() {
+        return affected;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+}
@@ -0,0 +1,72 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import java.util.List;
+
+/**
+ * Массовая операция: либо список ids, либо фильтр (role, enabled, usernamePrefix — условия через И).
+ */
+public class BulkUserRequest {
+
+    private BulkUserAction action;
+    private List<Long> ids;
+    private String role;
+    private Boolean enabled;
+    private String usernamePrefix;
+    private List<Long> roleIds;
+
+    public BulkUserAction getAction() {
+        return action;
+    }
+
+    public void setAction(BulkUserAction action) {
+        this.action = action;
+    }
+
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<Long> ids) {
+        this.ids = ids;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getUsernamePrefix() {
+        return usernamePrefix;
+    }
+
+    public void setUsernamePrefix(String usernamePrefix) {
+        this.usernamePrefix = usernamePrefix;
+    }
+
+    public List<Long> getRoleIds() {
+        return roleIds;
+    }
+
+    public void setRoleIds(List<Long> roleIds) {
+        this.roleIds = roleIds;
+    }
+
+    boolean hasIds() {
+        return ids != null && !ids.isEmpty();
+    }
+
+    boolean hasFilter() {
+        return role != null || enabled != null || (usernamePrefix != null && !usernamePrefix.isEmpty());
+    }
+}
@@ -0,0 +1,92 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import ru.kata.spring.boot_security.demo.entity.User;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+
+/**
+ * Страница пользователей, которая подгружается порциями по мере обхода в шаблоне.
+ * Перед загрузкой следующей порции вызывается beforeNextChunk (сброс уже отрисованного клиенту),
+ * так что в памяти одновременно держится не больше одной порции. Обойти можно только один раз;
+ * курсор следующей страницы известен после обхода.
+ */
+public class ChunkedUserPage implements Iterable<User> {
+
+    private final BiFunction<Long, Integer, UserPage> loader;
+    private final Long afterId;
+    private final int pageSize;
+    private final int chunkSize;
+    private final Runnable beforeNextChunk;
+
+    private boolean iterated;
+    private Long nextCursor;
+
+    public ChunkedUserPage(BiFunction<Long, Integer, UserPage> loader, Long afterId, int pageSize, int chunkSize,
+                           Runnable beforeNextChunk) {
+        this.loader = loader;
+        this.afterId = afterId;
+        this.pageSize = pageSize;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.beforeNextChunk = beforeNextChunk;
+    }
+
+    @Override
+    public Iterator<User> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("Страницу можно обойти только один раз");
+        }
+        iterated = true;
+        return new ChunkIterator();
+    }
+
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    private class ChunkIterator implements Iterator<User> {
+
+        private Iterator<User> chunk = Collections.emptyIterator();
+        private Long cursor = afterId;
+        private int loaded;
+        private boolean exhausted;
+
+        @Override
+        public boolean hasNext() {
+            while (!chunk.hasNext() && !exhausted) {
+                loadNextChunk();
+            }
+            return chunk.hasNext();
+        }
+
+        @Override
+        public User next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return chunk.next();
+        }
+
+        private void loadNextChunk() {
+            if (loaded > 0) {
+                beforeNextChunk.run();
+            }
+            int limit = Math.min(chunkSize, pageSize - loaded);
+            UserPage page = loader.apply(cursor, limit);
+            List<User> users = page.getUsers();
+            loaded += users.size();
+            cursor = page.getNextCursor();
+            chunk = users.iterator();
+
+            if (!page.hasNext()) {
+                exhausted = true;
+            } else if (loaded >= pageSize) {
+                exhausted = true;
+                nextCursor = cursor;
+            }
+        }
+    }
+}
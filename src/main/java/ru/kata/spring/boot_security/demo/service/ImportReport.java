@@ -0,0 +1,91 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ImportReport {
+
+    private final int maxErrors;
+    private final List<RowError> errors = new ArrayList<>();
+    private long total;
+    private long imported;
+    private long failed;
+    private long durationMs;
+
+    public ImportReport(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    void rowRead() {
+        total++;
+    }
+
+    void rowsImported(int count) {
+        imported += count;
+    }
+
+    void rowFailed(long line, String username, String message) {
+        failed++;
+        // Список ошибок ограничен, чтобы отчёт не рос вместе с размером импорта
+        if (errors.size() < maxErrors) {
+            errors.add(new RowError(line, username, message));
+        }
+    }
+
+    void finish(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public double getRowsPerSecond() {
+        return durationMs > 0 ? total * 1000.0 / durationMs : total;
+    }
+
+    public boolean isErrorsTruncated() {
+        return failed > errors.size();
+    }
+
+    public List<RowError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public static class RowError {
+        private final long line;
+        private final String username;
+        private final String message;
+
+        RowError(long line, String username, String message) {
+            this.line = line;
+            this.username = username;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import ru.kata.spring.boot_security.demo.entity.Role;
+import ru.kata.spring.boot_security.demo.repositories.RoleRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Справочник ролей в памяти. Роли меняются редко, поэтому читаем неизменяемую карту,
+ * а при изменениях целиком подменяем её новой (copy-on-write).
+ */
+@Component
+public class RoleRegistry implements SmartInitializingSingleton {
+
+    private final RoleRepository roleRepository;
+    private volatile Map<Long, Role> rolesById = Collections.emptyMap();
+    private volatile List<Role> roles = Collections.emptyList();
+
+    @Autowired
+    public RoleRegistry(RoleRepository roleRepository) {
+        this.roleRepository = roleRepository;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        reload();
+    }
+
+    public synchronized void reload() {
+        Map<Long, Role> byId = new LinkedHashMap<>();
+        for (Role role : roleRepository.findAll(Sort.by("id"))) {
+            byId.put(role.getId(), role);
+        }
+        this.rolesById = Collections.unmodifiableMap(byId);
+        this.roles = Collections.unmodifiableList(new ArrayList<>(byId.values()));
+    }
+
+    public List<Role> getAll() {
+        return roles;
+    }
+
+    public boolean contains(Long id) {
+        return rolesById.containsKey(id);
+    }
+
+    public Set<Role> resolve(Collection<Long> ids) {
+        Map<Long, Role> snapshot = rolesById;
+        Set<Role> resolved = new LinkedHashSet<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            Role role = snapshot.get(id);
+            if (role != null) {
+                resolved.add(role);
+            } else if (id != null) {
+                missing.add(id);
+            }
+        }
+
+        // Роль могла появиться в БД после загрузки справочника: добираем одним запросом
+        if (!missing.isEmpty()) {
+            List<Role> loaded = roleRepository.findAllById(missing);
+            if (!loaded.isEmpty()) {
+                resolved.addAll(loaded);
+                reload();
+            }
+        }
+        return resolved;
+    }
+}
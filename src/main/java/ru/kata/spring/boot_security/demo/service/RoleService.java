@@ -3,20 +3,29 @@ package ru.kata.spring.boot_security.demo.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.kata.spring.boot_security.demo.entity.Role;
-import ru.kata.spring.boot_security.demo.repositories.RoleRepository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 @Service
 public class RoleService {
-    private final RoleRepository roleRepository;
+    private final RoleRegistry roleRegistry;
 
     @Autowired
-    public RoleService(RoleRepository roleRepository) {
-        this.roleRepository = roleRepository;
+    public RoleService(RoleRegistry roleRegistry) {
+        this.roleRegistry = roleRegistry;
     }
 
     public List<Role> getAllRoles() {
-        return roleRepository.findAll();
+        return roleRegistry.getAll();
+    }
+
+    public Set<Role> findRoles(Collection<Long> ids) {
+        return roleRegistry.resolve(ids);
+    }
+
+    public void reload() {
+        roleRegistry.reload();
     }
 }
@@ -0,0 +1,64 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.hibernate.Cache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.kata.spring.boot_security.demo.entity.CacheRegions;
+import ru.kata.spring.boot_security.demo.entity.User;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Сброс кэша второго уровня после записей в обход Hibernate (JDBC в импорте и массовых операциях).
+ * Записи через JPA и JPQL Hibernate сбрасывает сам.
+ */
+@Component
+public class SecondLevelCacheEvictor {
+
+    private static final String USER_ROLES_COLLECTION = User.class.getName() + ".roles";
+
+    private final Cache cache;
+
+    @Autowired
+    public SecondLevelCacheEvictor(EntityManagerFactory entityManagerFactory) {
+        this.cache = entityManagerFactory.getCache().unwrap(Cache.class);
+    }
+
+    /**
+     * Пользователи с их ролями и поиск по логину; как и PrincipalCache, ещё раз после завершения транзакции,
+     * чтобы параллельное чтение не вернуло в кэш незакоммиченное состояние.
+     */
+    public void evictUsers(Collection<Long> ids) {
+        List<Long> snapshot = List.copyOf(ids);
+        afterCompletionToo(() -> {
+            for (Long id : snapshot) {
+                cache.evictEntityData(User.class, id);
+                cache.evictCollectionData(USER_ROLES_COLLECTION, id);
+            }
+            cache.evictQueryRegion(CacheRegions.USER_BY_USERNAME);
+        });
+    }
+
+    /**
+     * После вставки новых пользователей: в кэше могли остаться пустые результаты поиска по их логинам.
+     */
+    public void evictUsernameQueries() {
+        afterCompletionToo(() -> cache.evictQueryRegion(CacheRegions.USER_BY_USERNAME));
+    }
+
+    private static void afterCompletionToo(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    eviction.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.kata.spring.boot_security.demo.audit.AuditAction;
+import ru.kata.spring.boot_security.demo.audit.AuditEvent;
+import ru.kata.spring.boot_security.demo.entity.Role;
+import ru.kata.spring.boot_security.demo.security.CredentialsVersionCache;
+import ru.kata.spring.boot_security.demo.security.PrincipalCache;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Массовые операции над пользователями одним UPDATE/DELETE/INSERT ... SELECT на порцию,
+ * без загрузки сущностей. Каждая порция — отдельная транзакция.
+ */
+@Service
+@Lazy
+public class UserBulkService {
+
+    // Себя администратор этими операциями не заденет: иначе можно потерять доступ к панели
+    private static final Set<BulkUserAction> SKIP_ACTOR = EnumSet.of(
+            BulkUserAction.DISABLE, BulkUserAction.DELETE, BulkUserAction.SET_ROLES, BulkUserAction.REMOVE_ROLES);
+    private static final Set<BulkUserAction> ROLE_ACTIONS = EnumSet.of(
+            BulkUserAction.SET_ROLES, BulkUserAction.ADD_ROLES, BulkUserAction.REMOVE_ROLES);
+
+    private static final String SELECT_BY_IDS = "SELECT id, username FROM users WHERE id IN (:ids) ORDER BY id";
+    // version растёт вместе с любым изменением строки или её ролей: на нём держатся ETag и If-Match в REST API
+    private static final String UPDATE_ENABLED =
+            "UPDATE users SET enabled = :enabled, version = version + 1, " +
+            "credentials_version = credentials_version + :revoke WHERE id IN (:ids) AND enabled <> :enabled";
+    private static final String DELETE_ROLES_OF_USERS = "DELETE FROM user_roles WHERE user_id IN (:ids)";
+    private static final String DELETE_USERS = "DELETE FROM users WHERE id IN (:ids)";
+    private static final String DELETE_LISTED_ROLES =
+            "DELETE FROM user_roles WHERE user_id IN (:ids) AND role_id IN (:roleIds)";
+    private static final String DELETE_OTHER_ROLES =
+            "DELETE FROM user_roles WHERE user_id IN (:ids) AND role_id NOT IN (:roleIds)";
+    private static final String INSERT_MISSING_ROLES =
+            "INSERT INTO user_roles (user_id, role_id) " +
+            "SELECT u.id, r.id FROM users u CROSS JOIN authorities r " +
+            "WHERE u.id IN (:ids) AND r.id IN (:roleIds) " +
+            "AND NOT EXISTS (SELECT 1 FROM user_roles ur WHERE ur.user_id = u.id AND ur.role_id = r.id)";
+    // Выданные раньше токены входа перестают приниматься
+    private static final String BUMP_VERSIONS =
+            "UPDATE users SET version = version + 1, credentials_version = credentials_version + 1 WHERE id IN (:ids)";
+
+    private static final String MISSING_ROLE = "EXISTS (SELECT 1 FROM authorities r WHERE r.id IN (:roleIds) " +
+            "AND NOT EXISTS (SELECT 1 FROM user_roles ur WHERE ur.user_id = u.id AND ur.role_id = r.id))";
+    // Пользователи порции, у которых действие что-то поменяет. Остальных не трогаем: ни запись, ни версии,
+    // ни кэши, ни аудит. DELETE меняет всех.
+    private static final Map<BulkUserAction, String> SELECT_CHANGED = new EnumMap<>(Map.of(
+            BulkUserAction.ENABLE, "SELECT id FROM users WHERE id IN (:ids) AND enabled <> :enabled",
+            BulkUserAction.DISABLE, "SELECT id FROM users WHERE id IN (:ids) AND enabled <> :enabled",
+            BulkUserAction.ADD_ROLES, "SELECT u.id FROM users u WHERE u.id IN (:ids) AND " + MISSING_ROLE,
+            BulkUserAction.REMOVE_ROLES,
+            "SELECT DISTINCT user_id FROM user_roles WHERE user_id IN (:ids) AND role_id IN (:roleIds)",
+            BulkUserAction.SET_ROLES, "SELECT u.id FROM users u WHERE u.id IN (:ids) AND (" + MISSING_ROLE +
+                    " OR EXISTS (SELECT 1 FROM user_roles ur WHERE ur.user_id = u.id AND ur.role_id NOT IN (:roleIds)))"));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RoleRegistry roleRegistry;
+    private final PrincipalCache principalCache;
+    private final CredentialsVersionCache credentialsVersions;
+    private final SecondLevelCacheEvictor cacheEvictor;
+    private final UsernameFilter usernameFilter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int chunkSize;
+
+    @Autowired
+    public UserBulkService(NamedParameterJdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           RoleRegistry roleRegistry,
+                           PrincipalCache principalCache,
+                           CredentialsVersionCache credentialsVersions,
+                           SecondLevelCacheEvictor cacheEvictor,
+                           UsernameFilter usernameFilter,
+                           ApplicationEventPublisher eventPublisher,
+                           @Value("${admin.bulk.chunk-size:500}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.roleRegistry = roleRegistry;
+        this.principalCache = principalCache;
+        this.credentialsVersions = credentialsVersions;
+        this.cacheEvictor = cacheEvictor;
+        this.usernameFilter = usernameFilter;
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    public BulkUserReport apply(BulkUserRequest request, Long actorId) {
+        BulkUserAction action = request.getAction();
+        if (action == null) {
+            throw new IllegalArgumentException("Не указано действие");
+        }
+        if (request.hasIds() == request.hasFilter()) {
+            throw new IllegalArgumentException("Нужен либо список ids, либо фильтр");
+        }
+        List<Long> roleIds = roleIds(action, request.getRoleIds());
+        Long skippedId = SKIP_ACTOR.contains(action) ? actorId : null;
+
+        BulkUserReport report = new BulkUserReport(action);
+        long started = System.nanoTime();
+        if (request.hasIds()) {
+            List<Long> ids = new ArrayList<>(new LinkedHashSet<>(request.getIds()));
+            for (int from = 0; from < ids.size(); from += chunkSize) {
+                List<Long> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+                transactionTemplate.executeWithoutResult(status -> {
+                    List<UserRef> users = jdbcTemplate.query(SELECT_BY_IDS,
+                            new MapSqlParameterSource("ids", chunk), (rs, i) -> new UserRef(rs.getLong(1), rs.getString(2)));
+                    applyChunk(action, users, roleIds, skippedId, report);
+                });
+            }
+        } else {
+            // Keyset по id: строки, которые перестали подходить под фильтр после своей порции, не сдвигают следующие
+            FilterQuery query = new FilterQuery(request, chunkSize);
+            long[] after = {0};
+            boolean more = true;
+            while (more) {
+                more = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                    List<UserRef> users = jdbcTemplate.query(query.sql, query.params(after[0]),
+                            (rs, i) -> new UserRef(rs.getLong(1), rs.getString(2)));
+                    if (users.isEmpty()) {
+                        return false;
+                    }
+                    after[0] = users.get(users.size() - 1).id;
+                    applyChunk(action, users, roleIds, skippedId, report);
+                    return users.size() == chunkSize;
+                }));
+            }
+        }
+        report.finish((System.nanoTime() - started) / 1_000_000);
+        return report;
+    }
+
+    private void applyChunk(BulkUserAction action, List<UserRef> users, List<Long> roleIds, Long skippedId,
+                            BulkUserReport report) {
+        int matched = users.size();
+        if (skippedId != null) {
+            users = users.stream().filter(user -> user.id != skippedId).collect(Collectors.toList());
+        }
+        if (users.isEmpty()) {
+            report.chunkApplied(matched, 0);
+            return;
+        }
+
+        List<Long> ids = users.stream().map(user -> user.id).collect(Collectors.toList());
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", ids);
+        if (roleIds != null) {
+            params.addValue("roleIds", roleIds);
+        }
+        boolean enable = action == BulkUserAction.ENABLE;
+        if (action == BulkUserAction.ENABLE || action == BulkUserAction.DISABLE) {
+            params.addValue("enabled", enable).addValue("revoke", enable ? 0 : 1);
+        }
+        String selectChanged = SELECT_CHANGED.get(action);
+        if (selectChanged != null) {
+            Set<Long> changed = new HashSet<>(jdbcTemplate.queryForList(selectChanged, params, Long.class));
+            users = users.stream().filter(user -> changed.contains(user.id)).collect(Collectors.toList());
+            if (users.isEmpty()) {
+                report.chunkApplied(matched, 0);
+                return;
+            }
+            ids = users.stream().map(user -> user.id).collect(Collectors.toList());
+            params.addValue("ids", ids);
+        }
+
+        int affected;
+        switch (action) {
+            case ENABLE:
+            case DISABLE:
+                affected = jdbcTemplate.update(UPDATE_ENABLED, params);
+                break;
+            case DELETE:
+                jdbcTemplate.update(DELETE_ROLES_OF_USERS, params);
+                affected = jdbcTemplate.update(DELETE_USERS, params);
+                break;
+            case SET_ROLES:
+                affected = jdbcTemplate.update(DELETE_OTHER_ROLES, params)
+                        + jdbcTemplate.update(INSERT_MISSING_ROLES, params);
+                break;
+            case ADD_ROLES:
+                affected = jdbcTemplate.update(INSERT_MISSING_ROLES, params);
+                break;
+            case REMOVE_ROLES:
+                affected = jdbcTemplate.update(DELETE_LISTED_ROLES, params);
+                break;
+            default:
+                throw new IllegalArgumentException("Неподдерживаемое действие: " + action);
+        }
+
+        if (ROLE_ACTIONS.contains(action)) {
+            jdbcTemplate.update(BUMP_VERSIONS, params);
+        }
+        principalCache.evict(users.stream().map(user -> user.username).toArray(String[]::new));
+        credentialsVersions.evict(ids);
+        cacheEvictor.evictUsers(ids);
+        AuditAction auditAction = action == BulkUserAction.DELETE ? AuditAction.DELETE : AuditAction.UPDATE;
+        for (UserRef user : users) {
+            if (action == BulkUserAction.DELETE) {
+                usernameFilter.recordRemoval();
+                eventPublisher.publishEvent(UserChangedEvent.deleted(user.id));
+            }
+            eventPublisher.publishEvent(AuditEvent.of(auditAction, user.id, user.username));
+        }
+        report.chunkApplied(matched, affected);
+    }
+
+    private List<Long> roleIds(BulkUserAction action, List<Long> requested) {
+        if (!ROLE_ACTIONS.contains(action)) {
+            return null;
+        }
+        if (requested == null || requested.isEmpty()) {
+            throw new IllegalArgumentException("Не указаны роли");
+        }
+        Set<Long> distinct = new LinkedHashSet<>(requested);
+        Set<Role> roles = roleRegistry.resolve(distinct);
+        if (roles.size() != distinct.size()) {
+            throw new IllegalArgumentException("Роль не найдена");
+        }
+        return new ArrayList<>(distinct);
+    }
+
+    private static final class FilterQuery {
+
+        private final String sql;
+        private final MapSqlParameterSource base = new MapSqlParameterSource();
+
+        private FilterQuery(BulkUserRequest request, int limit) {
+            StringBuilder sql = new StringBuilder("SELECT u.id, u.username FROM users u WHERE u.id > :after");
+            if (request.getEnabled() != null) {
+                sql.append(" AND u.enabled = :enabled");
+                base.addValue("enabled", request.getEnabled());
+            }
+            if (request.getUsernamePrefix() != null && !request.getUsernamePrefix().isEmpty()) {
+                sql.append(" AND u.username LIKE :prefix");
+                base.addValue("prefix", escapeLike(request.getUsernamePrefix()) + "%");
+            }
+            if (request.getRole() != null) {
+                sql.append(" AND EXISTS (SELECT 1 FROM user_roles ur JOIN authorities a ON a.id = ur.role_id" +
+                        " WHERE ur.user_id = u.id AND a.authority = :role)");
+                String role = request.getRole().trim().toUpperCase(Locale.ROOT);
+                base.addValue("role", role.startsWith("ROLE_") ? role : "ROLE_" + role);
+            }
+            sql.append(" ORDER BY u.id LIMIT :limit");
+            base.addValue("limit", limit);
+            this.sql = sql.toString();
+        }
+
+        private MapSqlParameterSource params(long after) {
+            return new MapSqlParameterSource(base.getValues()).addValue("after", after);
+        }
+
+        private static String escapeLike(String value) {
+            return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        }
+    }
+
+    private static final class UserRef {
+
+        private final long id;
+        private final String username;
+
+        private UserRef(long id, String username) {
+            this.id = id;
+            this.username = username;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import ru.kata.spring.boot_security.demo.entity.User;
+
+/**
+ * Пользователь создан, изменён или удалён. Публикуется внутри транзакции,
+ * слушатели получают его после коммита.
+ */
+public class UserChangedEvent {
+
+    private final UserSuggestion user;
+    private final Long deletedId;
+
+    private UserChangedEvent(UserSuggestion user, Long deletedId) {
+        this.user = user;
+        this.deletedId = deletedId;
+    }
+
+    public static UserChangedEvent saved(User user) {
+        return saved(user.getId(), user.getUsername(), user.getName(), user.getLastName());
+    }
+
+    public static UserChangedEvent saved(Long id, String username, String name, String lastName) {
+        return new UserChangedEvent(new UserSuggestion(id, username, name, lastName), null);
+    }
+
+    public static UserChangedEvent deleted(Long id) {
+        return new UserChangedEvent(null, id);
+    }
+
+    public boolean isDeleted() {
+        return deletedId != null;
+    }
+
+    public Long getId() {
+        return deletedId != null ? deletedId : user.getId();
+    }
+
+    // Снимок полей на момент изменения; null для удаления
+    public UserSuggestion getUser() {
+        return user;
+    }
+}
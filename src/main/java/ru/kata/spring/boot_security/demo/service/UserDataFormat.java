@@ -0,0 +1,30 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.springframework.http.MediaType;
+
+public enum UserDataFormat {
+    CSV("text/csv"),
+    NDJSON("application/x-ndjson");
+
+    private final String mediaType;
+
+    UserDataFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public static UserDataFormat fromMediaType(String contentType) {
+        if (contentType != null) {
+            MediaType type = MediaType.parseMediaType(contentType);
+            for (UserDataFormat format : values()) {
+                if (MediaType.parseMediaType(format.mediaType).isCompatibleWith(type)) {
+                    return format;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Неподдерживаемый формат: " + contentType);
+    }
+}
@@ -0,0 +1,179 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.kata.spring.boot_security.demo.repositories.UserRepository;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Потоковая выгрузка пользователей: строки читаются курсором и сразу пишутся в ответ,
+ * в памяти держится только текущий пользователь.
+ */
+@Service
+@Lazy
+public class UserExportService {
+
+    private static final String CSV_HEADER = "id,username,name,lastName,age,enabled,roles";
+
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+    private final int flushEvery;
+
+    @Autowired
+    public UserExportService(UserRepository userRepository, ObjectMapper objectMapper,
+                             @Value("${admin.export.flush-every:1000}") int flushEvery) {
+        this.userRepository = userRepository;
+        this.objectMapper = objectMapper;
+        this.flushEvery = flushEvery;
+    }
+
+    @Transactional(readOnly = true)
+    public long export(Writer writer, UserDataFormat format) throws IOException {
+        RowWriter rowWriter = format == UserDataFormat.CSV ? new CsvRowWriter(writer) : new JsonRowWriter(writer);
+        long exported = 0;
+
+        try (Stream<Object[]> rows = userRepository.streamExportRows()) {
+            Iterator<Object[]> iterator = rows.iterator();
+            ExportRow current = null;
+            while (iterator.hasNext()) {
+                Object[] row = iterator.next();
+                Long id = (Long) row[0];
+                if (current == null || !current.id.equals(id)) {
+                    if (current != null) {
+                        rowWriter.write(current);
+                        if (++exported % flushEvery == 0) {
+                            writer.flush();
+                        }
+                    }
+                    current = new ExportRow(row);
+                }
+                if (row[6] != null) {
+                    current.roles.add((String) row[6]);
+                }
+            }
+            if (current != null) {
+                rowWriter.write(current);
+                exported++;
+            }
+        }
+
+        rowWriter.finish();
+        return exported;
+    }
+
+    private interface RowWriter {
+        void write(ExportRow row) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        @Override
+        public void write(ExportRow row) throws IOException {
+            writer.write(String.valueOf(row.id));
+            writer.write(',');
+            writer.write(escape(row.username));
+            writer.write(',');
+            writer.write(escape(row.name));
+            writer.write(',');
+            writer.write(escape(row.lastName));
+            writer.write(',');
+            writer.write(row.age != null ? String.valueOf(row.age) : "");
+            writer.write(',');
+            writer.write(String.valueOf(row.enabled));
+            writer.write(',');
+            writer.write(escape(String.join("|", row.roles)));
+            writer.write('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+        private static String escape(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    private class JsonRowWriter implements RowWriter {
+        private final JsonGenerator generator;
+
+        JsonRowWriter(Writer writer) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(writer)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(ExportRow row) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("id", row.id);
+            generator.writeStringField("username", row.username);
+            generator.writeStringField("name", row.name);
+            generator.writeStringField("lastName", row.lastName);
+            if (row.age != null) {
+                generator.writeNumberField("age", row.age);
+            } else {
+                generator.writeNullField("age");
+            }
+            generator.writeBooleanField("enabled", row.enabled);
+            generator.writeArrayFieldStart("roles");
+            for (String role : row.roles) {
+                generator.writeString(role);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.flush();
+        }
+    }
+
+    private static class ExportRow {
+        private final Long id;
+        private final String username;
+        private final String name;
+        private final String lastName;
+        private final Integer age;
+        private final boolean enabled;
+        private final List<String> roles = new ArrayList<>(2);
+
+        ExportRow(Object[] row) {
+            this.id = (Long) row[0];
+            this.username = (String) row[1];
+            this.name = (String) row[2];
+            this.lastName = (String) row[3];
+            this.age = (Integer) row[4];
+            this.enabled = (Boolean) row[5];
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.kata.spring.boot_security.demo.entity.Role;
+import ru.kata.spring.boot_security.demo.entity.User;
+import ru.kata.spring.boot_security.demo.security.PasswordHashingExecutor;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Потоковый импорт пользователей из CSV/NDJSON: строки читаются по одной,
+ * проверяются и пишутся пачками JDBC-batch в отдельных транзакциях.
+ */
+@Service
+@Lazy
+public class UserImportService {
+
+    private static final String INSERT_USER =
+            "INSERT INTO users (username, password, name, lastname, age, enabled) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_USER_ROLE = "INSERT INTO user_roles (user_id, role_id) VALUES (?, ?)";
+    private static final String SELECT_IDS = "SELECT id, username FROM users WHERE username IN (:usernames)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RoleService roleService;
+    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final UsernameFilter usernameFilter;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SecondLevelCacheEvictor cacheEvictor;
+    private final int chunkSize;
+    private final int maxErrors;
+
+    @Autowired
+    public UserImportService(NamedParameterJdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             RoleService roleService,
+                             PasswordEncoder passwordEncoder,
+                             PasswordHashingExecutor passwordHashingExecutor,
+                             UsernameFilter usernameFilter,
+                             Validator validator,
+                             ObjectMapper objectMapper,
+                             ApplicationEventPublisher eventPublisher,
+                             SecondLevelCacheEvictor cacheEvictor,
+                             @Value("${admin.import.chunk-size:1000}") int chunkSize,
+                             @Value("${admin.import.max-errors:1000}") int maxErrors) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.roleService = roleService;
+        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.usernameFilter = usernameFilter;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.cacheEvictor = cacheEvictor;
+        this.chunkSize = chunkSize;
+        this.maxErrors = maxErrors;
+    }
+
+    public ImportReport importUsers(InputStream input, UserDataFormat format) throws IOException {
+        ImportReport report = new ImportReport(maxErrors);
+        long started = System.nanoTime();
+        Map<String, Long> roleIds = roleIdsByAuthority();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            long lineNumber = 0;
+            Map<String, Integer> csvColumns = null;
+            if (format == UserDataFormat.CSV) {
+                String header = reader.readLine();
+                lineNumber++;
+                csvColumns = parseCsvHeader(header);
+            }
+
+            List<ImportRow> chunk = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                report.rowRead();
+                try {
+                    chunk.add(format == UserDataFormat.CSV
+                            ? parseCsvRow(line, lineNumber, csvColumns)
+                            : parseJsonRow(line, lineNumber));
+                } catch (JsonProcessingException e) {
+                    report.rowFailed(lineNumber, null, "Некорректная строка: " + e.getOriginalMessage());
+                } catch (IllegalArgumentException e) {
+                    report.rowFailed(lineNumber, null, "Некорректная строка: " + e.getMessage());
+                }
+
+                if (chunk.size() == chunkSize) {
+                    processChunk(chunk, roleIds, report);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                processChunk(chunk, roleIds, report);
+            }
+        }
+
+        report.finish((System.nanoTime() - started) / 1_000_000);
+        return report;
+    }
+
+    private void processChunk(List<ImportRow> chunk, Map<String, Long> roleIds, ImportReport report) {
+        List<ImportRow> valid = new ArrayList<>(chunk.size());
+        Set<String> seen = new HashSet<>();
+        for (ImportRow row : chunk) {
+            String error = validate(row, roleIds);
+            if (error == null && !seen.add(row.key())) {
+                error = "Логин повторяется в файле";
+            }
+            if (error != null) {
+                report.rowFailed(row.line, row.username, error);
+            } else {
+                valid.add(row);
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        Set<String> existing = existingUsernames(valid);
+        valid.removeIf(row -> {
+            if (existing.contains(row.key())) {
+                report.rowFailed(row.line, row.username, "Пользователь с таким именем уже существует");
+                return true;
+            }
+            return false;
+        });
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        List<String> hashes = passwordHashingExecutor.mapInParallel(
+                valid.stream().map(row -> row.password).collect(Collectors.toList()),
+                passwordEncoder::encode);
+        for (int i = 0; i < valid.size(); i++) {
+            valid.get(i).hash = hashes.get(i);
+        }
+        writeChunk(valid, roleIds, report);
+    }
+
+    /**
+     * Логин могли занять после проверки (другой узел или параллельный запрос): тогда дубликатами
+     * отмечаются только занятые строки, а остальные записываются повторно.
+     */
+    private void writeChunk(List<ImportRow> rows, Map<String, Long> roleIds, ImportReport report) {
+        while (!rows.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insertChunk(rows, roleIds));
+                report.rowsImported(rows.size());
+                return;
+            } catch (DataIntegrityViolationException e) {
+                Set<String> taken = UsernameAlreadyExistsException.isUsernameConflict(e)
+                        ? selectUsernames(rows.stream().map(row -> row.username).collect(Collectors.toList()))
+                        : Collections.emptySet();
+                boolean removed = rows.removeIf(row -> {
+                    if (taken.contains(row.key())) {
+                        report.rowFailed(row.line, row.username, "Пользователь с таким именем уже существует");
+                        return true;
+                    }
+                    return false;
+                });
+                if (!removed) {
+                    failChunk(rows, e, report);
+                    return;
+                }
+            } catch (DataAccessException e) {
+                failChunk(rows, e, report);
+                return;
+            }
+        }
+    }
+
+    private static void failChunk(List<ImportRow> rows, DataAccessException e, ImportReport report) {
+        String message = "Ошибка записи: " + e.getMostSpecificCause().getMessage();
+        rows.forEach(row -> report.rowFailed(row.line, row.username, message));
+    }
+
+    private void insertChunk(List<ImportRow> rows, Map<String, Long> roleIds) {
+        List<Object[]> userArgs = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            usernameFilter.put(row.username);
+            userArgs.add(new Object[]{row.username, row.hash, row.name, row.lastName, row.age, row.enabled});
+        }
+        jdbcTemplate.getJdbcOperations().batchUpdate(INSERT_USER, userArgs);
+        cacheEvictor.evictUsernameQueries();
+
+        // id выдаёт AUTO_INCREMENT, поэтому забираем их для всей пачки одним запросом
+        Map<String, Long> ids = new HashMap<>();
+        jdbcTemplate.query(SELECT_IDS,
+                Collections.singletonMap("usernames", rows.stream().map(row -> row.username).collect(Collectors.toList())),
+                rs -> {
+                    ids.put(rs.getString("username").toLowerCase(Locale.ROOT), rs.getLong("id"));
+                });
+
+        List<Object[]> roleArgs = new ArrayList<>();
+        for (ImportRow row : rows) {
+            Long userId = ids.get(row.key());
+            for (String role : row.roles) {
+                roleArgs.add(new Object[]{userId, roleIds.get(role)});
+            }
+            eventPublisher.publishEvent(UserChangedEvent.saved(userId, row.username, row.name, row.lastName));
+        }
+        if (!roleArgs.isEmpty()) {
+            jdbcTemplate.getJdbcOperations().batchUpdate(INSERT_USER_ROLE, roleArgs);
+        }
+    }
+
+    private String validate(ImportRow row, Map<String, Long> roleIds) {
+        if (row.username == null || row.username.isEmpty()) {
+            return "Логин не должен быть пустым";
+        }
+        if (row.password == null || row.password.isEmpty()) {
+            return "Пароль не может быть пустым";
+        }
+
+        User user = new User(row.username, row.password, row.name, row.lastName, row.age, row.enabled);
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+        }
+
+        for (String role : row.roles) {
+            if (!roleIds.containsKey(role)) {
+                return "Неизвестная роль: " + role;
+            }
+        }
+        return null;
+    }
+
+    private Set<String> existingUsernames(List<ImportRow> rows) {
+        // В IN-запрос попадают только логины, которые фильтр не признал свободными
+        List<String> candidates = rows.stream()
+                .map(row -> row.username)
+                .filter(usernameFilter::mightContain)
+                .collect(Collectors.toList());
+        return selectUsernames(candidates);
+    }
+
+    private Set<String> selectUsernames(List<String> usernames) {
+        Set<String> existing = new HashSet<>();
+        if (usernames.isEmpty()) {
+            return existing;
+        }
+        jdbcTemplate.query(SELECT_IDS,
+                Collections.singletonMap("usernames", usernames),
+                rs -> {
+                    existing.add(rs.getString("username").toLowerCase(Locale.ROOT));
+                });
+        return existing;
+    }
+
+    private Map<String, Long> roleIdsByAuthority() {
+        Map<String, Long> roleIds = new HashMap<>();
+        for (Role role : roleService.getAllRoles()) {
+            roleIds.putIfAbsent(role.getAuthority(), role.getId());
+        }
+        return roleIds;
+    }
+
+    private Map<String, Integer> parseCsvHeader(String header) {
+        if (header == null) {
+            throw new IllegalArgumentException("Пустой файл импорта");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names = parseCsvLine(header);
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columns.containsKey("username") || !columns.containsKey("password")) {
+            throw new IllegalArgumentException("В заголовке CSV нужны колонки username и password");
+        }
+        return columns;
+    }
+
+    private ImportRow parseCsvRow(String line, long lineNumber, Map<String, Integer> columns) {
+        List<String> values = parseCsvLine(line);
+        ImportRow row = new ImportRow(lineNumber);
+        row.username = column(values, columns, "username");
+        row.password = column(values, columns, "password");
+        row.name = column(values, columns, "name");
+        row.lastName = column(values, columns, "lastname");
+        row.age = parseAge(column(values, columns, "age"));
+        row.enabled = parseEnabled(column(values, columns, "enabled"));
+        row.roles = parseRoles(column(values, columns, "roles"));
+        return row;
+    }
+
+    private ImportRow parseJsonRow(String line, long lineNumber) throws JsonProcessingException {
+        JsonNode node = objectMapper.readTree(line);
+        if (!node.isObject()) {
+            throw new IllegalArgumentException("ожидался JSON-объект");
+        }
+        ImportRow row = new ImportRow(lineNumber);
+        row.username = text(node, "username");
+        row.password = text(node, "password");
+        row.name = text(node, "name");
+        row.lastName = text(node, "lastName");
+        row.age = parseAge(text(node, "age"));
+        row.enabled = parseEnabled(text(node, "enabled"));
+        JsonNode roles = node.get("roles");
+        if (roles != null && roles.isArray()) {
+            List<String> names = new ArrayList<>();
+            roles.forEach(role -> names.add(role.asText()));
+            row.roles = parseRoles(String.join("|", names));
+        } else {
+            row.roles = parseRoles(text(node, "roles"));
+        }
+        return row;
+    }
+
+    private static String column(List<String> values, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index != null && index < values.size() ? values.get(index) : null;
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static Integer parseAge(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("возраст должен быть числом");
+        }
+    }
+
+    private static boolean parseEnabled(String value) {
+        return value == null || value.isBlank() || Boolean.parseBoolean(value.trim());
+    }
+
+    private static List<String> parseRoles(String value) {
+        if (value == null || value.isBlank()) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(value.split("\\|"))
+                .map(String::trim)
+                .filter(role -> !role.isEmpty())
+                .map(role -> role.startsWith("ROLE_") ? role : "ROLE_" + role)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    // Разбор строки CSV по RFC 4180 (без переносов строк внутри значений)
+    private static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("незакрытая кавычка");
+        }
+        values.add(current.toString());
+        return values;
+    }
+
+    private static class ImportRow {
+        private final long line;
+        private String username;
+        private String password;
+        private String hash;
+        private String name;
+        private String lastName;
+        private Integer age;
+        private boolean enabled = true;
+        private List<String> roles = Collections.emptyList();
+
+        ImportRow(long line) {
+            this.line = line;
+        }
+
+        String key() {
+            return username.toLowerCase(Locale.ROOT);
+        }
+    }
+}
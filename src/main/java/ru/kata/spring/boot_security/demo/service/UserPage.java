@@ -0,0 +1,28 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import ru.kata.spring.boot_security.demo.entity.User;
+
+import java.util.List;
+
+public class UserPage {
+
+    private final List<User> users;
+    private final Long nextCursor;
+
+    public UserPage(List<User> users, Long nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
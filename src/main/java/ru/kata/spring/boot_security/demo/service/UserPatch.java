@@ -0,0 +1,91 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import ru.kata.spring.boot_security.demo.entity.User;
+
+import java.util.List;
+
+/**
+ * Тело POST и PATCH в /api/users. Незаданное (null) поле при PATCH не меняется,
+ * пустой пароль — тоже; roleIds заменяет набор ролей целиком.
+ */
+public class UserPatch {
+
+    private String username;
+    private String password;
+    private String name;
+    private String lastName;
+    private Integer age;
+    private Boolean enabled;
+    private List<Long> roleIds;
+
+    /**
+     * Правка из формы админки: пустой пароль и пустой список ролей оставляют прежние значения.
+     * Поля enabled в форме правки нет, поэтому оно не меняется (иначе правка включала бы отключённых).
+     */
+    public static UserPatch fromForm(User form, List<Long> roleIds) {
+        UserPatch patch = new UserPatch();
+        patch.username = form.getUsername();
+        patch.password = form.getPassword();
+        patch.name = form.getName();
+        patch.lastName = form.getLastName();
+        patch.age = form.getAge();
+        patch.roleIds = roleIds != null && !roleIds.isEmpty() ? roleIds : null;
+        return patch;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public Integer getAge() {
+        return age;
+    }
+
+    public void setAge(Integer age) {
+        this.age = age;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<Long> getRoleIds() {
+        return roleIds;
+    }
+
+    public void setRoleIds(List<Long> roleIds) {
+        this.roleIds = roleIds;
+    }
+}
@@ -0,0 +1,72 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import ru.kata.spring.boot_security.demo.entity.Role;
+import ru.kata.spring.boot_security.demo.entity.User;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Пользователь в ответах /api/users, без пароля. Роли должны быть загружены.
+ */
+public class UserResource {
+
+    private final Long id;
+    private final String username;
+    private final String name;
+    private final String lastName;
+    private final Integer age;
+    private final boolean enabled;
+    private final List<String> roles;
+    private final long version;
+
+    private UserResource(User user) {
+        this.id = user.getId();
+        this.username = user.getUsername();
+        this.name = user.getName();
+        this.lastName = user.getLastName();
+        this.age = user.getAge();
+        this.enabled = user.isEnabled();
+        this.roles = user.getRoles().stream()
+                .map(Role::getAuthority)
+                .sorted()
+                .collect(Collectors.toList());
+        this.version = user.getVersion();
+    }
+
+    public static UserResource from(User user) {
+        return new UserResource(user);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public Integer getAge() {
+        return age;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,22 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import java.util.List;
+
+public class UserResourcePage {
+
+    private final List<UserResource> users;
+    private final Long nextCursor;
+
+    public UserResourcePage(List<UserResource> users, Long nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<UserResource> getUsers() {
+        return users;
+    }
+
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,301 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Индекс для поиска пользователей по началу логина, имени или фамилии (без учёта регистра).
+ * Каждое слово каждого поля лежит в упорядоченной карте, поиск по префиксу — спуск к первому ключу
+ * и чтение подряд идущих, без обхода всех пользователей.
+ * Собирается из БД при старте, дальше обновляется событиями UserChangedEvent после коммита.
+ * События приходят только с этого узла, поэтому индекс периодически сверяется с БД
+ * (users.search-index.resync-interval, 0 — не сверять).
+ * С users.build-after-startup=true (профиль fast-start) собирается в фоне после старта, до этого поиск ничего не находит.
+ */
+@Component
+public class UserSearchIndex implements SmartInitializingSingleton, DisposableBean, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(UserSearchIndex.class);
+
+    // Сколько совпадений по первому слову запроса просматривать при фильтрации по остальным словам
+    private static final int MAX_SCAN = 10_000;
+
+    private static final Comparator<Key> KEY_ORDER = Comparator.comparing((Key key) -> key.token)
+            .thenComparingLong(key -> key.id);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration resyncInterval;
+    private final boolean buildAfterStartup;
+    private final ConcurrentSkipListMap<Key, UserSuggestion> tokens = new ConcurrentSkipListMap<>(KEY_ORDER);
+    private final Map<Long, UserSuggestion> byId = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    // id, изменённые событиями во время сверки: строки из её выборки для них могут быть устаревшими
+    private volatile Set<Long> changedDuringResync;
+    private volatile boolean ready;
+
+    @Autowired
+    public UserSearchIndex(DataSource dataSource,
+                           @Value("${users.search-index.resync-interval:10m}") Duration resyncInterval,
+                           @Value("${users.build-after-startup:false}") boolean buildAfterStartup) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(1000);
+        this.resyncInterval = resyncInterval;
+        this.buildAfterStartup = buildAfterStartup;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-search-resync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!buildAfterStartup) {
+            build();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (buildAfterStartup) {
+            scheduler.execute(() -> {
+                try {
+                    build();
+                } catch (RuntimeException e) {
+                    log.warn("user search index build failed", e);
+                }
+            });
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Сверяет индекс с БД: подхватывает изменения с других узлов и убирает удалённых там пользователей.
+     * Пользователи, изменённые событиями во время сверки, не трогаются.
+     */
+    public void resync() {
+        long started = System.nanoTime();
+        int[] counts = sync();
+        if (counts[0] > 0 || counts[1] > 0) {
+            log.info("user search index resynced: {} updated, {} removed in {} ms",
+                    counts[0], counts[1], (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    // Первая сборка — та же сверка пустого индекса: события, пришедшие во время выборки, не затираются ею
+    private void build() {
+        long started = System.nanoTime();
+        sync();
+        ready = true;
+        log.info("user search index built: {} users in {} ms", byId.size(), (System.nanoTime() - started) / 1_000_000);
+
+        long interval = resyncInterval.toMillis();
+        if (interval > 0) {
+            scheduler.scheduleWithFixedDelay(this::resyncQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Обновлённые и удалённые записи
+    private int[] sync() {
+        Set<Long> changed = ConcurrentHashMap.newKeySet();
+        changedDuringResync = changed;
+        try {
+            Set<Long> present = new HashSet<>(byId.size() * 2);
+            int[] counts = new int[2];
+            jdbcTemplate.query("SELECT id, username, name, lastname FROM users", rs -> {
+                UserSuggestion user = new UserSuggestion(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4));
+                present.add(user.getId());
+                if (!changed.contains(user.getId()) && !sameFields(byId.get(user.getId()), user)) {
+                    put(user);
+                    counts[0]++;
+                }
+            });
+            for (Long id : new ArrayList<>(byId.keySet())) {
+                if (!present.contains(id) && !changed.contains(id)) {
+                    remove(id);
+                    counts[1]++;
+                }
+            }
+            return counts;
+        } finally {
+            changedDuringResync = null;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        Set<Long> changed = changedDuringResync;
+        if (changed != null) {
+            changed.add(event.getId());
+        }
+        if (event.isDeleted()) {
+            remove(event.getId());
+        } else {
+            put(event.getUser());
+        }
+    }
+
+    /**
+     * Пользователи, у которых для каждого слова запроса есть поле, начинающееся с него.
+     */
+    public List<UserSuggestion> search(String query, int limit) {
+        String[] terms = terms(query);
+        // Недостроенный индекс дал бы случайную часть совпадений
+        if (!ready || terms.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        // По индексу ищем самое длинное слово — у него меньше всего совпадений
+        String lead = Arrays.stream(terms).max(Comparator.comparingInt(String::length)).orElseThrow();
+
+        List<UserSuggestion> result = new ArrayList<>(Math.min(limit, 64));
+        Set<Long> seen = new HashSet<>();
+        int scanned = 0;
+        for (Map.Entry<Key, UserSuggestion> entry : tokens.tailMap(new Key(lead, Long.MIN_VALUE)).entrySet()) {
+            if (!entry.getKey().token.startsWith(lead) || ++scanned > MAX_SCAN) {
+                break;
+            }
+            UserSuggestion user = entry.getValue();
+            if (seen.add(user.getId()) && matchesAll(user, terms)) {
+                result.add(user);
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("users.search.index.users", byId, Map::size)
+                .description("Пользователи в поисковом индексе")
+                .register(registry);
+        Gauge.builder("users.search.index.tokens", tokens, ConcurrentNavigableMap::size)
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private void resyncQuietly() {
+        try {
+            resync();
+        } catch (RuntimeException e) {
+            log.warn("user search index resync failed", e);
+        }
+    }
+
+    private void put(UserSuggestion user) {
+        Set<String> newTokens = tokensOf(user);
+        byId.compute(user.getId(), (id, previous) -> {
+            // Сначала новые ключи, потом удаление старых: поиск не теряет пользователя посередине
+            for (String token : newTokens) {
+                tokens.put(new Key(token, id), user);
+            }
+            if (previous != null) {
+                for (String token : tokensOf(previous)) {
+                    if (!newTokens.contains(token)) {
+                        tokens.remove(new Key(token, id));
+                    }
+                }
+            }
+            return user;
+        });
+    }
+
+    private void remove(Long id) {
+        byId.computeIfPresent(id, (key, previous) -> {
+            for (String token : tokensOf(previous)) {
+                tokens.remove(new Key(token, key));
+            }
+            return null;
+        });
+    }
+
+    private static boolean sameFields(UserSuggestion indexed, UserSuggestion user) {
+        return indexed != null
+                && Objects.equals(indexed.getUsername(), user.getUsername())
+                && Objects.equals(indexed.getName(), user.getName())
+                && Objects.equals(indexed.getLastName(), user.getLastName());
+    }
+
+    private static boolean matchesAll(UserSuggestion user, String[] terms) {
+        Set<String> userTokens = tokensOf(user);
+        for (String term : terms) {
+            if (userTokens.stream().noneMatch(token -> token.startsWith(term))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> tokensOf(UserSuggestion user) {
+        Set<String> result = new HashSet<>(8);
+        addTokens(result, user.getUsername());
+        addTokens(result, user.getName());
+        addTokens(result, user.getLastName());
+        return result;
+    }
+
+    // Поле из нескольких слов («van der Berg») индексируется по каждому слову
+    private static void addTokens(Set<String> tokens, String value) {
+        Collections.addAll(tokens, terms(value));
+    }
+
+    private static String[] terms(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        return Arrays.stream(text.trim().toLowerCase(Locale.ROOT).split("\\s+"))
+                .filter(term -> !term.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static final class Key {
+
+        private final String token;
+        private final long id;
+
+        private Key(String token, long id) {
+            this.token = token;
+            this.id = id;
+        }
+    }
+}
@@ -1,123 +1,191 @@
 package ru.kata.spring.boot_security.demo.service;
 
+import io.micrometer.core.annotation.Timed;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.kata.spring.boot_security.demo.audit.AuditAction;
+import ru.kata.spring.boot_security.demo.audit.AuditEvent;
 import ru.kata.spring.boot_security.demo.entity.Role;
 import ru.kata.spring.boot_security.demo.entity.User;
-import ru.kata.spring.boot_security.demo.repositories.RoleRepository;
 import ru.kata.spring.boot_security.demo.repositories.UserRepository;
+import ru.kata.spring.boot_security.demo.security.CredentialsVersionCache;
+import ru.kata.spring.boot_security.demo.security.PrincipalCache;
+import ru.kata.spring.boot_security.demo.security.UserPrincipal;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 public class UserService implements UserDetailsService {
 
     private final UserRepository userRepository;
-    private final RoleRepository roleRepository;
+    private final RoleRegistry roleRegistry;
     private final PasswordEncoder passwordEncoder;
+    private final PrincipalCache principalCache;
+    private final UsernameFilter usernameFilter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CredentialsVersionCache credentialsVersions;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
-    public UserService(UserRepository userRepository, RoleRepository roleRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, RoleRegistry roleRegistry, PasswordEncoder passwordEncoder,
+                       PrincipalCache principalCache, UsernameFilter usernameFilter,
+                       ApplicationEventPublisher eventPublisher, CredentialsVersionCache credentialsVersions,
+                       PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
-        this.roleRepository = roleRepository;
+        this.roleRegistry = roleRegistry;
         this.passwordEncoder = passwordEncoder;
+        this.principalCache = principalCache;
+        this.usernameFilter = usernameFilter;
+        this.eventPublisher = eventPublisher;
+        this.credentialsVersions = credentialsVersions;
+        // Не readOnly: вход читает основную БД. Реплика после отключения или блокировки могла бы вернуть
+        // прежнюю запись, и она осталась бы в кэше принципалов и в кэше второго уровня
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
-    @Transactional
+    @Timed(value = "user.service", histogram = true)
+    @Transactional(readOnly = true)
     public List<User> getAllUsers() {
         return userRepository.findAll();
     }
-    @Transactional
+
+    @Timed(value = "user.service", histogram = true)
+    @Transactional(readOnly = true)
+    public UserPage getUsersPage(Long afterId, int size) {
+        // Берём на одну запись больше, чтобы понять, есть ли следующая страница
+        List<Long> ids = userRepository.findIdsAfter(afterId != null ? afterId : 0L, PageRequest.of(0, size + 1));
+        if (ids.isEmpty()) {
+            return new UserPage(Collections.emptyList(), null);
+        }
+
+        boolean hasNext = ids.size() > size;
+        List<Long> pageIds = hasNext ? ids.subList(0, size) : ids;
+        List<User> users = userRepository.findAllWithRolesByIdIn(pageIds);
+        return new UserPage(users, hasNext ? pageIds.get(pageIds.size() - 1) : null);
+    }
+    /**
+     * id → version первых limit пользователей после afterId, без загрузки сущностей.
+     */
+    @Timed(value = "user.service", histogram = true)
+    @Transactional(readOnly = true)
+    public Map<Long, Long> findVersionsAfter(Long afterId, int limit) {
+        Map<Long, Long> versions = new LinkedHashMap<>();
+        for (Object[] row : userRepository.findIdVersionsAfter(afterId != null ? afterId : 0L, PageRequest.of(0, limit))) {
+            versions.put((Long) row[0], (Long) row[1]);
+        }
+        return versions;
+    }
+
+    @Timed(value = "user.service", histogram = true)
+    @Transactional(readOnly = true)
+    public Optional<Long> findVersion(Long id) {
+        return userRepository.findVersionById(id);
+    }
+
+    @Timed(value = "user.service", histogram = true)
+    @Transactional(readOnly = true)
+    public List<User> findAllWithRoles(Collection<Long> ids) {
+        return ids.isEmpty() ? Collections.emptyList() : userRepository.findAllWithRolesByIdIn(ids);
+    }
+
+    @Timed(value = "user.service", histogram = true)
+    @Transactional(readOnly = true)
     public Optional<User> findByUsername(String username) {
-        return userRepository.findByUsername(username);
+        return userRepository.findByUsername(username).map(UserService::initializeRoles);
     }
-    @Transactional
+    @Timed(value = "user.service", histogram = true)
+    @Transactional(readOnly = true)
     public Optional<User> findById(Long id) {
-        return userRepository.findById(id);
+        // По первичному ключу, а не запросом с EntityGraph: сущность и роли достаются из кэша второго уровня
+        return userRepository.findById(id).map(UserService::initializeRoles);
     }
 
+    @Timed(value = "user.service", histogram = true)
     @Transactional(readOnly = true)
     public boolean existsByUsername(String username, Long id) {
-        return userRepository.findByUsername(username)
-                .map(user -> !user.getId().equals(id))
-                .orElse(false);
+        // Фильтр точно знает свободные логины, в БД идём только при возможном совпадении
+        if (!usernameFilter.mightContain(username)) {
+            return false;
+        }
+        return id == null
+                ? userRepository.existsByUsername(username)
+                : userRepository.existsByUsernameAndIdNot(username, id);
     }
 
+    @Timed(value = "user.service", histogram = true)
     @Transactional
     public void updateUser(Long id, User user, List<Long> roleIds) {
         User existingUser = userRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Пользователь не найден"));
-
-        existingUser.setName(user.getName());
-        existingUser.setLastName(user.getLastName());
-        existingUser.setAge(user.getAge());
-        existingUser.setEnabled(user.isEnabled());
-        existingUser.setUsername(user.getUsername());
-
-        if (user.getPassword() != null && !user.getPassword().isEmpty()) {
-            existingUser.setPassword(passwordEncoder.encode(user.getPassword()));
-        }
-
-        if (roleIds != null && !roleIds.isEmpty()) {
-            Set<Role> roles = roleIds.stream()
-                    .map(roleRepository::findById)
-                    .filter(Optional::isPresent)
-                    .map(Optional::get)
-                    .collect(Collectors.toSet());
-            existingUser.setRoles(roles);
-        }
-
-        userRepository.save(existingUser);
+        applyPatch(existingUser, UserPatch.fromForm(user, roleIds));
     }
 
+    /**
+     * Создаёт пользователя или, если задан id существующего, правит его как {@link #updateUser}.
+     * Занятый логин — UsernameAlreadyExistsException.
+     */
+    @Timed(value = "user.service", histogram = true)
     @Transactional
-    public void saveUser(User user, List<Long> roleIds) {
-        if (user.getId() == null && existsByUsername(user.getUsername(), null)) {
-            throw new RuntimeException("Пользователь с таким именем уже существует");
-        }
-
-        User userToSave = user.getId() != null ? findById(user.getId()).orElse(new User()) : new User();
-
-        userToSave.setName(user.getName());
-        userToSave.setLastName(user.getLastName());
-        userToSave.setAge(user.getAge());
-        userToSave.setEnabled(user.isEnabled());
-        userToSave.setUsername(user.getUsername());
-
+    public User saveUser(User user, List<Long> roleIds) {
         if (user.getId() != null) {
-            User existingUser = findById(user.getId()).orElse(null);
-            if (existingUser != null) {
-                if (user.getPassword() == null || user.getPassword().isEmpty()) {
-                    userToSave.setPassword(existingUser.getPassword());
-                } else {
-                    userToSave.setPassword(passwordEncoder.encode(user.getPassword()));
-                }
-            } else {
-                userToSave.setPassword(passwordEncoder.encode(user.getPassword()));
+            Optional<User> existingUser = userRepository.findById(user.getId());
+            if (existingUser.isPresent()) {
+                applyPatch(existingUser.get(), UserPatch.fromForm(user, roleIds));
+                return existingUser.get();
             }
-        } else {
-            userToSave.setPassword(passwordEncoder.encode(user.getPassword()));
+        }
+        if (existsByUsername(user.getUsername(), null)) {
+            throw new UsernameAlreadyExistsException();
         }
 
+        User created = new User(user.getUsername(), passwordEncoder.encode(user.getPassword()), user.getName(),
+                user.getLastName(), user.getAge(), user.isEnabled());
         if (roleIds != null && !roleIds.isEmpty()) {
-            Set<Role> roles = roleIds.stream()
-                    .map(roleRepository::findById)
-                    .filter(Optional::isPresent)
-                    .map(Optional::get)
-                    .collect(Collectors.toSet());
-            userToSave.setRoles(roles);
+            created.getRoles().addAll(roleRegistry.resolve(roleIds));
         }
+        principalCache.evict(created.getUsername());
+        usernameFilter.put(created.getUsername());
+        writeUsername(() -> userRepository.save(created));
+        eventPublisher.publishEvent(UserChangedEvent.saved(created));
+        eventPublisher.publishEvent(AuditEvent.of(AuditAction.CREATE, created.getId(), created.getUsername()));
+        return created;
+    }
 
-        userRepository.save(userToSave);
+    /**
+     * Меняет только заданные в patch поля. expectedVersion — из If-Match, null — без проверки;
+     * при расхождении, в том числе с параллельной правкой до коммита, — ObjectOptimisticLockingFailureException.
+     * Пустой Optional — пользователя нет.
+     */
+    @Timed(value = "user.service", histogram = true)
+    @Transactional
+    public Optional<User> patchUser(Long id, UserPatch patch, Long expectedVersion) {
+        Optional<User> found = userRepository.findById(id).map(UserService::initializeRoles);
+        found.ifPresent(user -> {
+            checkVersion(user, expectedVersion);
+            applyPatch(user, patch);
+        });
+        return found;
     }
 
+    @Timed(value = "user.service", histogram = true)
     @Transactional
     public void changePassword(String username, String newPassword) {
         if (newPassword == null || newPassword.isEmpty()) {
@@ -126,24 +194,174 @@ public class UserService implements UserDetailsService {
 
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("Пользователь не найден"));
+        principalCache.evict(user.getUsername());
 
         user.setPassword(passwordEncoder.encode(newPassword));
+        user.setLockedUntil(null);
+        bumpCredentialsVersion(user);
         userRepository.save(user);
+        eventPublisher.publishEvent(AuditEvent.of(AuditAction.PASSWORD_CHANGE, user.getId(), user.getUsername()));
     }
 
+    @Timed(value = "user.service", histogram = true)
     @Transactional
     public void deleteUser(Long id) {
-        User user = userRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Пользователь не найден"));
+        if (!deleteUser(id, null)) {
+            throw new RuntimeException("Пользователь не найден");
+        }
+    }
+
+    /**
+     * false — пользователя нет. expectedVersion проверяется как в {@link #patchUser}.
+     */
+    @Timed(value = "user.service", histogram = true)
+    @Transactional
+    public boolean deleteUser(Long id, Long expectedVersion) {
+        Optional<User> found = userRepository.findById(id);
+        if (found.isEmpty()) {
+            return false;
+        }
+        User user = found.get();
+        checkVersion(user, expectedVersion);
+        principalCache.evict(user.getUsername());
+        // Подписанная кука удалённого перестаёт приниматься сразу, а не через ttl кэша версий
+        credentialsVersions.evict(List.of(id));
         userRepository.delete(user);
+        usernameFilter.recordRemoval();
+        eventPublisher.publishEvent(UserChangedEvent.deleted(id));
+        eventPublisher.publishEvent(AuditEvent.of(AuditAction.DELETE, id, user.getUsername()));
+        return true;
     }
 
-    @Override
+    /**
+     * Блокирует вход до указанного момента. false — такого пользователя нет.
+     * Через сущность, а не массовым UPDATE: растёт version, а из кэша второго уровня уходит только эта запись.
+     * Параллельная правка того же пользователя даёт OptimisticLockingFailureException.
+     */
+    @Timed(value = "user.service", histogram = true)
     @Transactional
-    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    public boolean lockUntil(String username, Instant until) {
+        Optional<User> found = userRepository.findByUsername(username);
+        if (found.isEmpty()) {
+            return false;
+        }
+        User user = found.get();
+        principalCache.evict(user.getUsername());
+        user.setLockedUntil(until);
+        eventPublisher.publishEvent(AuditEvent.of(AuditAction.LOCK, user.getId(), user.getUsername()));
+        return true;
+    }
+
+    /**
+     * Общий путь правки: сущность уже загружена один раз, сеттеры вызываются только для изменившихся полей,
+     * и благодаря @DynamicUpdate UPDATE пишет только их. Пустой пароль BCrypt не трогает.
+     * Если ничего не изменилось, нет ни UPDATE, ни событий.
+     */
+    private void applyPatch(User user, UserPatch patch) {
+        String oldUsername = user.getUsername();
+        boolean usernameChanged = patch.getUsername() != null && !patch.getUsername().equals(oldUsername);
+        boolean changed = usernameChanged;
+        boolean credentialsChanged = usernameChanged;
+        if (usernameChanged) {
+            if (existsByUsername(patch.getUsername(), user.getId())) {
+                throw new UsernameAlreadyExistsException();
+            }
+            user.setUsername(patch.getUsername());
+            usernameFilter.put(patch.getUsername());
+        }
+        if (patch.getName() != null && !patch.getName().equals(user.getName())) {
+            user.setName(patch.getName());
+            changed = true;
+        }
+        if (patch.getLastName() != null && !patch.getLastName().equals(user.getLastName())) {
+            user.setLastName(patch.getLastName());
+            changed = true;
+        }
+        if (patch.getAge() != null && !patch.getAge().equals(user.getAge())) {
+            user.setAge(patch.getAge());
+            changed = true;
+        }
+        if (patch.getEnabled() != null && patch.getEnabled() != user.isEnabled()) {
+            credentialsChanged |= !patch.getEnabled();
+            user.setEnabled(patch.getEnabled());
+            changed = true;
+        }
+        if (patch.getPassword() != null && !patch.getPassword().isEmpty()) {
+            user.setPassword(passwordEncoder.encode(patch.getPassword()));
+            credentialsChanged = true;
+            changed = true;
+        }
+        if (patch.getRoleIds() != null && replaceRoles(user, roleRegistry.resolve(patch.getRoleIds()))) {
+            credentialsChanged = true;
+            changed = true;
+        }
+        if (!changed) {
+            return;
+        }
+        if (credentialsChanged) {
+            bumpCredentialsVersion(user);
+        }
+        if (usernameChanged) {
+            // Сразу, а не при коммите: так конфликт логина превращается в UsernameAlreadyExistsException
+            writeUsername(userRepository::flush);
+        }
+        principalCache.evict(oldUsername, user.getUsername());
+        eventPublisher.publishEvent(UserChangedEvent.saved(user));
+        eventPublisher.publishEvent(AuditEvent.of(AuditAction.UPDATE, user.getId(), user.getUsername()));
+    }
+
+    // Фильтр логинов знает только записи этого узла, а проверка не видит незакоммиченные вставки:
+    // окончательный ответ даёт ограничение уникальности
+    private static void writeUsername(Runnable write) {
+        try {
+            write.run();
+        } catch (DataIntegrityViolationException e) {
+            if (UsernameAlreadyExistsException.isUsernameConflict(e)) {
+                throw new UsernameAlreadyExistsException();
+            }
+            throw e;
+        }
+    }
+
+    // Набор меняется на месте, а не заменяется: Hibernate удаляет и вставляет только разницу в user_roles,
+    // тогда как новая коллекция стёрла бы и записала заново все строки пользователя
+    private static boolean replaceRoles(User user, Set<Role> roles) {
+        Set<Role> current = user.getRoles();
+        return current.retainAll(roles) | current.addAll(roles);
+    }
+
+    // При попадании в кэш запросов роли не подгружены join fetch, а читаются из кэша коллекций
+    private static User initializeRoles(User user) {
+        Hibernate.initialize(user.getRoles());
         return user;
     }
 
+    // Загруженная версия уходит в WHERE при записи, так что правка между проверкой и коммитом тоже отклонится
+    private static void checkVersion(User user, Long expectedVersion) {
+        if (expectedVersion != null && expectedVersion != user.getVersion()) {
+            throw new ObjectOptimisticLockingFailureException(User.class, user.getId());
+        }
+    }
+
+    // Подписанные токены входа с прежней версией перестают приниматься
+    private void bumpCredentialsVersion(User user) {
+        user.setCredentialsVersion(user.getCredentialsVersion() + 1);
+        credentialsVersions.evict(List.of(user.getId()));
+    }
+
+    // Без @Transactional: попадание в кэш не должно занимать соединение с БД
+    @Override
+    @Timed(value = "user.service", histogram = true)
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        // Транзакция только при промахе: роли могут дочитываться из кэша второго уровня
+        UserPrincipal principal = principalCache.get(username, name -> transactionTemplate.execute(
+                status -> userRepository.findByUsername(name)
+                        .map(UserPrincipal::from)
+                        .orElse(null)));
+        if (principal == null) {
+            throw new UsernameNotFoundException("User not found");
+        }
+        return principal;
+    }
+
 }
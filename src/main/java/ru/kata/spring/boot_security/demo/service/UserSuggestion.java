@@ -0,0 +1,35 @@
+package ru.kata.spring.boot_security.demo.service;
+
+/**
+ * Поля пользователя, по которым работает поиск, и ответ автодополнения.
+ */
+public class UserSuggestion {
+
+    private final Long id;
+    private final String username;
+    private final String name;
+    private final String lastName;
+
+    public UserSuggestion(Long id, String username, String name, String lastName) {
+        this.id = id;
+        this.username = username;
+        this.name = name;
+        this.lastName = lastName;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+}
@@ -0,0 +1,36 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.sql.SQLException;
+import java.util.Locale;
+
+public class UsernameAlreadyExistsException extends RuntimeException {
+
+    // MySQL ER_DUP_ENTRY и SQLSTATE нарушения уникальности в H2 и PostgreSQL
+    private static final int MYSQL_DUPLICATE_ENTRY = 1062;
+    private static final String UNIQUE_VIOLATION = "23505";
+    // Имя, которое Hibernate сгенерировал для unique = true на users.username (схема из ddl-auto).
+    // Во Flyway-схеме ограничение называется uk_users_username, H2 и PostgreSQL называют в тексте саму колонку.
+    private static final String GENERATED_CONSTRAINT = "uk_r43af9ap4edm43mmtq01oddj6";
+
+    public UsernameAlreadyExistsException() {
+        super("Этот логин уже используется!");
+    }
+
+    /**
+     * Нарушено именно ограничение уникальности логина, а не другое (например, первичный ключ user_roles).
+     */
+    public static boolean isUsernameConflict(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                SQLException sqlException = (SQLException) cause;
+                boolean duplicate = sqlException.getErrorCode() == MYSQL_DUPLICATE_ENTRY
+                        || UNIQUE_VIOLATION.equals(sqlException.getSQLState());
+                String message = String.valueOf(sqlException.getMessage()).toLowerCase(Locale.ROOT);
+                return duplicate && (message.contains("username") || message.contains(GENERATED_CONSTRAINT));
+            }
+        }
+        return false;
+    }
+}
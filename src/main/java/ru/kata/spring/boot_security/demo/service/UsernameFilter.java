@@ -0,0 +1,240 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Фильтр Блума по занятым логинам (без учёта регистра, как в коллации MySQL).
+ * Положительный ответ проверяется запросом. Отрицательный точен для логинов, закоммиченных на этом узле,
+ * но не видит созданных другими узлами после сборки и ещё не закоммиченных: такие конфликты ловит
+ * ограничение уникальности (UserService переводит его в UsernameAlreadyExistsException).
+ * Удалённые логины из фильтра не убираются, поэтому после заметного числа удалений он пересобирается.
+ * С users.build-after-startup=true (профиль fast-start) собирается в фоне после старта, до этого отвечает «возможно занят».
+ */
+@Component
+public class UsernameFilter implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(UsernameFilter.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TaskExecutor taskExecutor;
+    private final int bitCount;
+    private final int hashCount;
+    private final long rebuildAfterRemovals;
+    private final boolean buildAfterStartup;
+
+    private volatile Bits bits;
+    // Во время пересборки новые логины пишутся и в текущий, и в собираемый массив
+    private volatile Bits building;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final LongAdder removalsSinceBuild = new LongAdder();
+    private final LongAdder negativeAnswers = new LongAdder();
+    private final LongAdder positiveAnswers = new LongAdder();
+
+    @Autowired
+    public UsernameFilter(DataSource dataSource,
+                          @Qualifier("applicationTaskExecutor") TaskExecutor taskExecutor,
+                          @Value("${users.username-filter.expected-insertions:1000000}") long expectedInsertions,
+                          @Value("${users.username-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                          @Value("${users.build-after-startup:false}") boolean buildAfterStartup) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(1000);
+        this.taskExecutor = taskExecutor;
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.min(Math.max(optimalBits, 64), Integer.MAX_VALUE - 63);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.rebuildAfterRemovals = Math.max(1000, expectedInsertions / 10);
+        this.buildAfterStartup = buildAfterStartup;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!buildAfterStartup) {
+            rebuild();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (buildAfterStartup) {
+            taskExecutor.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * false — логин точно свободен; true — возможно занят (или фильтр ещё не собран).
+     */
+    public boolean mightContain(String username) {
+        Bits current = bits;
+        if (current == null || username == null) {
+            return true;
+        }
+        boolean result = current.mightContain(key(username));
+        (result ? positiveAnswers : negativeAnswers).increment();
+        return result;
+    }
+
+    /**
+     * Внутри транзакции логин добавляется после коммита. Добавленный раньше мог бы потеряться:
+     * пересборка, начатая до коммита, не увидит строку в SELECT и заменит массив, в который он записан.
+     */
+    public void put(String username) {
+        if (username == null) {
+            return;
+        }
+        String key = key(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(key);
+                }
+            });
+        } else {
+            add(key);
+        }
+    }
+
+    // Сначала собираемый массив, потом текущий: rebuild меняет их в обратном порядке (bits, затем building),
+    // поэтому ключ попадёт либо в собираемый массив, либо в уже заменённый текущий
+    private void add(String key) {
+        Bits next = building;
+        if (next != null) {
+            next.put(key);
+        }
+        Bits current = bits;
+        if (current != null) {
+            current.put(key);
+        }
+    }
+
+    public void recordRemoval() {
+        removalsSinceBuild.increment();
+        if (removalsSinceBuild.sum() >= rebuildAfterRemovals && !rebuilding.get()) {
+            taskExecutor.execute(this::rebuild);
+        }
+    }
+
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long started = System.nanoTime();
+            Bits next = new Bits(bitCount, hashCount);
+            building = next;
+            removalsSinceBuild.reset();
+            long[] count = new long[1];
+            jdbcTemplate.query("SELECT username FROM users", rs -> {
+                next.put(key(rs.getString(1)));
+                count[0]++;
+            });
+            bits = next;
+            log.info("username filter built: {} names in {} ms", count[0], (System.nanoTime() - started) / 1_000_000);
+        } finally {
+            building = null;
+            rebuilding.set(false);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Bits current = bits;
+        long setBits = current != null ? current.cardinality() : 0;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("ready", current != null);
+        result.put("bits", bitCount);
+        result.put("hashes", hashCount);
+        result.put("fillRatio", (double) setBits / bitCount);
+        result.put("expectedFalsePositiveRate", Math.pow((double) setBits / bitCount, hashCount));
+        result.put("negativeAnswers", negativeAnswers.sum());
+        result.put("positiveAnswers", positiveAnswers.sum());
+        result.put("removalsSinceBuild", removalsSinceBuild.sum());
+        return result;
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Bits {
+
+        private final AtomicLongArray words;
+        private final int bitCount;
+        private final int hashCount;
+
+        private Bits(int bitCount, int hashCount) {
+            this.words = new AtomicLongArray((bitCount + 63) >>> 6);
+            this.bitCount = bitCount;
+            this.hashCount = hashCount;
+        }
+
+        private void put(String key) {
+            long hash = hash(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+                int index = bit >>> 6;
+                long mask = 1L << bit;
+                long word;
+                while (((word = words.get(index)) & mask) == 0) {
+                    if (words.compareAndSet(index, word, word | mask)) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        private boolean mightContain(String key) {
+            long hash = hash(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long cardinality() {
+            long count = 0;
+            for (int i = 0; i < words.length(); i++) {
+                count += Long.bitCount(words.get(i));
+            }
+            return count;
+        }
+
+        // FNV-1a с финальным перемешиванием из SplitMix64
+        private static long hash(String key) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                hash ^= key.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+            hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+            return hash ^ (hash >>> 31);
+        }
+    }
+}
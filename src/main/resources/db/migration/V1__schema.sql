@@ -0,0 +1,26 @@
+-- Схема, совпадающая с маппингом сущностей. IF NOT EXISTS: базы, созданные ddl-auto=update, принимаются как есть
+CREATE TABLE IF NOT EXISTS users (
+    id        BIGINT       NOT NULL AUTO_INCREMENT,
+    username  VARCHAR(255),
+    password  VARCHAR(255),
+    name      VARCHAR(255),
+    lastname  VARCHAR(255),
+    age       INT,
+    enabled   BIT          NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_users_username UNIQUE (username)
+);
+
+CREATE TABLE IF NOT EXISTS authorities (
+    id        BIGINT       NOT NULL AUTO_INCREMENT,
+    authority VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS user_roles (
+    user_id BIGINT NOT NULL,
+    role_id BIGINT NOT NULL,
+    PRIMARY KEY (user_id, role_id),
+    CONSTRAINT fk_user_roles_user FOREIGN KEY (user_id) REFERENCES users (id),
+    CONSTRAINT fk_user_roles_role FOREIGN KEY (role_id) REFERENCES authorities (id)
+);
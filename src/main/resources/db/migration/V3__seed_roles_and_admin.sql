@@ -0,0 +1,15 @@
+-- Идемпотентно: повторный прогон на заполненной базе ничего не меняет. Пароль администратора — admin (BCrypt)
+INSERT INTO authorities (authority)
+SELECT 'ROLE_ADMIN' FROM DUAL WHERE NOT EXISTS (SELECT 1 FROM authorities WHERE authority = 'ROLE_ADMIN');
+
+INSERT INTO authorities (authority)
+SELECT 'ROLE_USER' FROM DUAL WHERE NOT EXISTS (SELECT 1 FROM authorities WHERE authority = 'ROLE_USER');
+
+INSERT INTO users (username, password, enabled)
+SELECT 'admin', '$2a$10$1/3gzFRpiW9RTaz0NuPRDutbES7.9WTCrP.2AvPSZVrrCBdrVtiKm', 1 FROM DUAL
+WHERE NOT EXISTS (SELECT 1 FROM users WHERE username = 'admin');
+
+INSERT INTO user_roles (user_id, role_id)
+SELECT u.id, a.id FROM users u, authorities a
+WHERE u.username = 'admin' AND a.authority IN ('ROLE_ADMIN', 'ROLE_USER')
+  AND NOT EXISTS (SELECT 1 FROM user_roles ur WHERE ur.user_id = u.id AND ur.role_id = a.id);
@@ -0,0 +1,11 @@
+-- Журнал аудита изменений пользователей: только добавление строк, чтение страницами по (occurred_at, id)
+CREATE TABLE IF NOT EXISTS audit_log (
+    id              BIGINT       NOT NULL AUTO_INCREMENT,
+    occurred_at     DATETIME(6)  NOT NULL,
+    actor           VARCHAR(255) NOT NULL,
+    action          VARCHAR(32)  NOT NULL,
+    target_id       BIGINT,
+    target_username VARCHAR(255),
+    PRIMARY KEY (id),
+    INDEX idx_audit_log_occurred_at (occurred_at, id)
+);
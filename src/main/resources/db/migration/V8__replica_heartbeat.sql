@@ -0,0 +1,6 @@
+-- Heartbeat для оценки отставания реплики: ReplicaLagMonitor обновляет строку на основной БД и читает её из реплики
+CREATE TABLE IF NOT EXISTS replica_heartbeat (
+    id      INT    NOT NULL,
+    beat_at BIGINT NOT NULL,
+    PRIMARY KEY (id)
+);
@@ -0,0 +1,24 @@
+package ru.kata.spring.boot_security.demo;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.kata.spring.boot_security.demo.repositories.UserRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Миграции Flyway на пустой базе и проверка схемы Hibernate (ddl-auto=validate)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:faststart;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+@ActiveProfiles({"test", "fast-start"})
+class FastStartProfileTests {
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Test
+	void migrationsSeedAdmin() {
+		assertEquals(2, userRepository.findByUsername("admin").orElseThrow().getRoles().size());
+	}
+
+}
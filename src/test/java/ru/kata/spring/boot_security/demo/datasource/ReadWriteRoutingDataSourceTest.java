@@ -0,0 +1,189 @@
+package ru.kata.spring.boot_security.demo.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.kata.spring.boot_security.demo.repositories.UserRepository;
+import ru.kata.spring.boot_security.demo.service.UserService;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Две встроенные H2: основная и «реплика», на которую схема переносится снимком SCRIPT/RUNSCRIPT.
+ * Пользователь replicaonly есть только в реплике, по нему видно, куда ушло чтение.
+ * Кэш запросов выключен: иначе findByUsername отвечал бы из кэша, не доходя ни до одной из баз.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:primary;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "app.datasource.replica.url=jdbc:h2:mem:replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "app.datasource.replica.username=sa",
+        "app.datasource.replica.password=",
+        "app.datasource.replica.driver-class-name=org.h2.Driver",
+        "app.datasource.replica.lag-check-interval=1h",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+@ActiveProfiles("test")
+class ReadWriteRoutingDataSourceTest {
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replicaDataSource;
+
+    @Autowired
+    private ReplicaLagMonitor lagMonitor;
+
+    @Autowired
+    private ReadYourWritesInterceptor interceptor;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path tempDir;
+
+    private JdbcTemplate replica;
+
+    @BeforeEach
+    void replicate() {
+        String snapshot = tempDir.resolve("snapshot.sql").toString().replace('\\', '/');
+        replica = new JdbcTemplate(replicaDataSource);
+        lagMonitor.check();
+        new JdbcTemplate(primaryDataSource).execute("SCRIPT DROP TO '" + snapshot + "'");
+        replica.execute("RUNSCRIPT FROM '" + snapshot + "'");
+        replica.update("INSERT INTO users (username, password, enabled) VALUES ('replicaonly', 'x', true)");
+        lagMonitor.check();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplica() {
+        assertTrue(lagMonitor.isReplicaUsable());
+        assertTrue(readOnlyFind());
+        assertFalse(readWriteFind());
+    }
+
+    @Test
+    void loginLookupReadsPrimary() {
+        assertTrue(lagMonitor.isReplicaUsable());
+        assertThrows(UsernameNotFoundException.class, () -> userService.loadUserByUsername("replicaonly"));
+    }
+
+    @Test
+    void laggingReplicaFallsBackToPrimary() {
+        replica.update("UPDATE replica_heartbeat SET beat_at = ?", System.currentTimeMillis() - 60_000);
+        lagMonitor.check();
+
+        assertFalse(lagMonitor.isReplicaUsable());
+        assertFalse(readOnlyFind());
+    }
+
+    @Test
+    void requestAfterWriteReadsFromPrimary() {
+        MockHttpSession session = new MockHttpSession();
+
+        MockHttpServletRequest write = new MockHttpServletRequest("POST", "/admin/save");
+        write.setSession(session);
+        handle(write, new MockHttpServletResponse(), this::touchAdmin);
+        assertNotNull(session.getAttribute(ReadYourWritesInterceptor.PINNED_UNTIL));
+
+        MockHttpServletRequest read = new MockHttpServletRequest("GET", "/admin");
+        read.setSession(session);
+        interceptor.preHandle(read, new MockHttpServletResponse(), new Object());
+        try {
+            assertFalse(readOnlyFind());
+        } finally {
+            interceptor.afterCompletion(read, new MockHttpServletResponse(), new Object(), null);
+        }
+        assertTrue(readOnlyFind());
+    }
+
+    @Test
+    void readWriteTransactionWithoutWritesDoesNotPin() {
+        MockHttpSession session = new MockHttpSession();
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/admin/save");
+        request.setSession(session);
+        handle(request, new MockHttpServletResponse(), this::readWriteFind);
+
+        assertNull(session.getAttribute(ReadYourWritesInterceptor.PINNED_UNTIL));
+    }
+
+    @Test
+    void requestWithoutSessionIsPinnedByCookie() {
+        MockHttpServletRequest write = new MockHttpServletRequest("POST", "/api/users");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        handle(write, response, this::touchAdmin);
+        assertNull(write.getSession(false));
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertNotNull(setCookie);
+        String value = setCookie.substring(setCookie.indexOf('=') + 1, setCookie.indexOf(';'));
+
+        MockHttpServletRequest read = new MockHttpServletRequest("GET", "/api/users");
+        read.setCookies(new Cookie(ReadYourWritesInterceptor.PINNED_UNTIL_COOKIE, value));
+        interceptor.preHandle(read, new MockHttpServletResponse(), new Object());
+        try {
+            assertFalse(readOnlyFind());
+        } finally {
+            interceptor.afterCompletion(read, new MockHttpServletResponse(), new Object(), null);
+        }
+    }
+
+    private void handle(MockHttpServletRequest request, MockHttpServletResponse response, Runnable work) {
+        interceptor.preHandle(request, response, new Object());
+        try {
+            work.run();
+            interceptor.postHandle(request, response, new Object(), null);
+        } finally {
+            interceptor.afterCompletion(request, response, new Object(), null);
+        }
+    }
+
+    // Изменяющий запрос без изменения данных: в основную БД уходит UPDATE
+    private void touchAdmin() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                new JdbcTemplate(dataSource).update("UPDATE users SET enabled = enabled WHERE username = 'admin'"));
+    }
+
+    private boolean readOnlyFind() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return Boolean.TRUE.equals(template.execute(status -> userRepository.findByUsername("replicaonly").isPresent()));
+    }
+
+    private boolean readWriteFind() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        return Boolean.TRUE.equals(template.execute(status -> userRepository.findByUsername("replicaonly").isPresent()));
+    }
+}
@@ -0,0 +1,111 @@
+package ru.kata.spring.boot_security.demo.diagnostics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlowQuerySamplerTest {
+
+    private SimpleMeterRegistry registry;
+    private SlowQuerySampler sampler;
+    private long nanos;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        sampler = new SlowQuerySampler(Duration.ofMillis(100), 2, 10, () -> nanos);
+        sampler.bindTo(registry);
+    }
+
+    @Test
+    void shapeDropsLiteralsAndCollapsesInLists() {
+        assertEquals("SELECT * FROM users WHERE name = ? AND age > ? AND id in (?...)",
+                SlowQuerySampler.shape("SELECT *\n  FROM users WHERE name = 'O''Brien' AND age > 30 AND id IN (?, ?, ?)"));
+    }
+
+    @Test
+    void timerIsTaggedWithStatementIdAndUsesReportedElapsedTime() {
+        String sql = "SELECT id FROM users WHERE id = ?";
+        execute(sql, 40);
+        execute(sql, 60);
+
+        Timer timer = registry.find("jdbc.statement")
+                .tag("statement", SlowQuerySampler.statementId(SlowQuerySampler.shape(sql)))
+                .timer();
+        assertNotNull(timer);
+        assertEquals(2, timer.count());
+        assertEquals(100, timer.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertTrue(timer.getId().getTags().stream().noneMatch(tag -> tag.getKey().equals("sql")));
+        assertTrue(registry.find("jdbc.statement.histogram").meters().isEmpty());
+    }
+
+    @Test
+    void shapesBeyondLimitShareOneSeries() {
+        execute("SELECT a FROM t", 1);
+        execute("SELECT b FROM t", 1);
+        execute("SELECT c FROM t", 1);
+        execute("SELECT d FROM t", 1);
+
+        List<String> statements = registry.find("jdbc.statement").timers().stream()
+                .map(timer -> timer.getId().getTag("statement"))
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(3, statements.size());
+        assertTrue(statements.contains("other"));
+        assertEquals(2, registry.find("jdbc.statement").tag("statement", "other").timer().count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void slowQueriesAreRecordedWithoutParameterValues() {
+        execute("UPDATE users SET name = 'secret' WHERE id = 5", 150);
+        execute("SELECT 1", 5);
+
+        List<Map<String, Object>> recent = (List<Map<String, Object>>) sampler.stats().get("recent");
+        assertEquals(1, recent.size());
+        Map<String, Object> entry = recent.get(0);
+        assertEquals("UPDATE users SET name = ? WHERE id = ?", entry.get("sql"));
+        assertEquals(150.0, entry.get("elapsedMs"));
+        assertEquals(SlowQuerySampler.statementId("UPDATE users SET name = ? WHERE id = ?"), entry.get("statement"));
+    }
+
+    @Test
+    void subMillisecondStatementsKeepNanosecondPrecision() {
+        String sql = "SELECT id FROM users WHERE username = ?";
+        executeNanos(sql, TimeUnit.MICROSECONDS.toNanos(300));
+
+        Timer timer = registry.find("jdbc.statement")
+                .tag("statement", SlowQuerySampler.statementId(SlowQuerySampler.shape(sql)))
+                .timer();
+        assertNotNull(timer);
+        assertEquals(300, timer.totalTime(TimeUnit.MICROSECONDS), 0.001);
+    }
+
+    private void execute(String sql, long elapsedMs) {
+        executeNanos(sql, TimeUnit.MILLISECONDS.toNanos(elapsedMs));
+    }
+
+    // Миллисекунды datasource-proxy округлены вниз, как у быстрых запросов; sampler должен брать свои наносекунды
+    private void executeNanos(String sql, long elapsedNanos) {
+        ExecutionInfo info = new ExecutionInfo();
+        info.setElapsedTime(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        info.setSuccess(true);
+        List<QueryInfo> queries = List.of(new QueryInfo(sql));
+        sampler.beforeQuery(info, queries);
+        nanos += elapsedNanos;
+        sampler.afterQuery(info, queries);
+    }
+}
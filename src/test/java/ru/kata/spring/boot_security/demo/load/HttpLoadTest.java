@@ -0,0 +1,248 @@
+package ru.kata.spring.boot_security.demo.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.File;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочный прогон по HTTP: входы через форму, просмотры /user и /admin, запись через /admin/save.
+ * По умолчанию исключён из сборки, запуск: mvn -Pload-test test
+ * (параметры -Dload.users, -Dload.clients, -Dload.admin-clients, -Dload.duration).
+ */
+@Tag("load")
+// Все клиенты идут с одного адреса: лимит попыток входа здесь не проверяется
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "security.login-limit.address.burst=1000000",
+        "security.login-limit.username.burst=1000000"
+})
+@ActiveProfiles("test")
+class HttpLoadTest {
+
+    private static final Pattern CSRF = Pattern.compile("name=\"_csrf\"[^>]*value=\"([^\"]+)\"");
+    private static final String USER_PASSWORD = "password";
+
+    private final int users = Integer.getInteger("load.users", 1000);
+    private final int clients = Integer.getInteger("load.clients", 16);
+    private final int adminClients = Integer.getInteger("load.admin-clients", 4);
+    private final Duration duration = Duration.parse(System.getProperty("load.duration", "PT30S"));
+
+    private final Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+    private final AtomicLong createdUsers = new AtomicLong();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Test
+    void sustainedLoad() throws Exception {
+        seedUsers();
+        for (String operation : List.of("login", "GET /user", "GET /admin", "POST /admin/save")) {
+            recorders.put(operation, new LatencyRecorder());
+        }
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(clients + adminClients);
+        for (int i = 0; i < clients; i++) {
+            executor.submit(() -> userClient(deadline));
+        }
+        for (int i = 0; i < adminClients; i++) {
+            executor.submit(() -> adminClient(deadline));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(duration.toSeconds() + 120, TimeUnit.SECONDS));
+
+        report();
+    }
+
+    private void userClient(long deadline) {
+        while (System.nanoTime() < deadline) {
+            HttpClient client = newClient();
+            String username = "load" + ThreadLocalRandom.current().nextInt(users);
+            if (!login(client, username, USER_PASSWORD)) {
+                continue;
+            }
+            for (int i = 0; i < 10 && System.nanoTime() < deadline; i++) {
+                send(client, "GET /user", get("/user"));
+            }
+        }
+    }
+
+    private void adminClient(long deadline) {
+        HttpClient client = newClient();
+        while (!login(client, "admin", "admin") && System.nanoTime() < deadline) {
+            sleepQuietly();
+        }
+        while (System.nanoTime() < deadline) {
+            HttpResponse<String> page = send(client, "GET /admin", get("/admin"));
+            if (page == null) {
+                continue;
+            }
+            String csrf = csrf(page.body());
+            if (csrf != null && ThreadLocalRandom.current().nextInt(5) == 0) {
+                String username = "new" + createdUsers.incrementAndGet() + "x" + port;
+                send(client, "POST /admin/save", post("/admin/save", Map.of(
+                        "username", username, "password", USER_PASSWORD, "name", "Имя", "lastName", "Фамилия",
+                        "age", "30", "enabled", "true", "roleIds", roleUserId().toString(), "_csrf", csrf)));
+            }
+        }
+    }
+
+    private boolean login(HttpClient client, String username, String password) {
+        try {
+            HttpResponse<String> form = client.send(get("/login"), HttpResponse.BodyHandlers.ofString());
+            String csrf = csrf(form.body());
+            HttpResponse<String> response = send(client, "login", post("/login",
+                    Map.of("username", username, "password", password, "_csrf", csrf == null ? "" : csrf)));
+            return response != null;
+        } catch (Exception e) {
+            recorders.get("login").error();
+            return false;
+        }
+    }
+
+    private HttpResponse<String> send(HttpClient client, String operation, HttpRequest request) {
+        LatencyRecorder recorder = recorders.get(operation);
+        long started = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            long micros = (System.nanoTime() - started) / 1000;
+            if (response.statusCode() == 503) {
+                recorder.rejected();
+                return null;
+            }
+            // Успешный вход и сохранение отвечают редиректом, неудачный вход — редиректом на /login?error
+            String location = response.headers().firstValue("Location").orElse("");
+            if (response.statusCode() >= 400 || location.contains("error")) {
+                recorder.error();
+                return null;
+            }
+            recorder.record(micros);
+            return response;
+        } catch (Exception e) {
+            recorder.error();
+            return null;
+        }
+    }
+
+    private void seedUsers() {
+        // Один хэш на всех: сидирование не должно упираться в BCrypt
+        String hash = passwordEncoder.encode(USER_PASSWORD);
+        List<Object[]> rows = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            rows.add(new Object[]{"load" + i, hash, "Имя", "Фамилия", 30, true});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO users (username, password, name, lastname, age, enabled) VALUES (?, ?, ?, ?, ?, ?)", rows);
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role_id) SELECT id, ? FROM users WHERE username LIKE 'load%'",
+                roleUserId());
+    }
+
+    private Long roleUserId() {
+        return jdbcTemplate.queryForObject("SELECT id FROM authorities WHERE authority = 'ROLE_USER'", Long.class);
+    }
+
+    private void report() throws Exception {
+        double seconds = duration.toMillis() / 1000.0;
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("users", users);
+        report.put("clients", clients);
+        report.put("adminClients", adminClients);
+        report.put("durationSeconds", seconds);
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        recorders.forEach((operation, recorder) -> endpoints.put(operation, recorder.summary(seconds)));
+        report.put("endpoints", endpoints);
+
+        ObjectMapper mapper = new ObjectMapper();
+        File file = new File(System.getProperty("load.report", "target/load-test-report.json"));
+        mapper.writerWithDefaultPrettyPrinter().writeValue(file, report);
+
+        System.out.printf("%-18s %9s %7s %7s %10s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "503", "req/s", "p50 ms", "p99 ms", "max ms");
+        endpoints.forEach((operation, summary) -> {
+            Map<?, ?> s = (Map<?, ?>) summary;
+            System.out.printf("%-18s %9s %7s %7s %10.1f %9.1f %9.1f %9.1f%n", operation,
+                    s.get("requests"), s.get("errors"), s.get("rejected503"), s.get("throughputPerSecond"),
+                    s.get("p50Ms"), s.get("p99Ms"), s.get("maxMs"));
+        });
+    }
+
+    private HttpClient newClient() {
+        return HttpClient.newBuilder()
+                .cookieHandler(new CookieManager())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private HttpRequest post(String path, Map<String, String> form) {
+        StringBuilder body = new StringBuilder();
+        form.forEach((name, value) -> {
+            if (body.length() > 0) {
+                body.append('&');
+            }
+            body.append(URLEncoder.encode(name, StandardCharsets.UTF_8))
+                    .append('=')
+                    .append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+        });
+        return HttpRequest.newBuilder(uri(path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static String csrf(String html) {
+        Matcher matcher = CSRF.matcher(html);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static void sleepQuietly() {
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
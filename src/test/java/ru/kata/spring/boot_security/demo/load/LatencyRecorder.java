@@ -0,0 +1,55 @@
+package ru.kata.spring.boot_security.demo.load;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Копит задержки одной операции (в микросекундах) и считает перцентили после прогона.
+ */
+class LatencyRecorder {
+
+    private long[] samples = new long[1 << 14];
+    private int size;
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    synchronized void record(long micros) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = micros;
+    }
+
+    void error() {
+        errors.increment();
+    }
+
+    void rejected() {
+        rejected.increment();
+    }
+
+    synchronized Map<String, Object> summary(double seconds) {
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requests", size);
+        result.put("errors", errors.sum());
+        result.put("rejected503", rejected.sum());
+        result.put("throughputPerSecond", size / seconds);
+        result.put("p50Ms", percentile(sorted, 0.50));
+        result.put("p90Ms", percentile(sorted, 0.90));
+        result.put("p99Ms", percentile(sorted, 0.99));
+        result.put("maxMs", sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1000.0);
+        return result;
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1000.0;
+    }
+}
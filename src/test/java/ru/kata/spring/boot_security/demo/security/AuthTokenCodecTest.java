@@ -0,0 +1,48 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AuthTokenCodecTest {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    private final AuthTokenCodec codec = new AuthTokenCodec(SECRET);
+    private final UserPrincipal principal = new UserPrincipal(42L, "ivan", "hash", "Иван", "Петров", 30, true, null,
+            7, 12L, List.of("ROLE_ADMIN", "ROLE_USER"));
+
+    @Test
+    void decodesWhatItEncoded() {
+        AuthTokenCodec.Token token = codec.decode(codec.encode(principal, 2000), 1000);
+
+        assertNotNull(token);
+        assertEquals(2000, token.expiresAt);
+        assertEquals(principal, token.principal);
+        assertEquals(7, token.principal.getCredentialsVersion());
+        assertEquals(12L, token.principal.getVersion());
+        assertEquals("Иван", token.principal.getName());
+        assertEquals(30, token.principal.getAge());
+        assertEquals(Set.of("ROLE_ADMIN", "ROLE_USER"), token.principal.getRoles());
+        assertNull(token.principal.getPassword());
+    }
+
+    @Test
+    void rejectsExpiredTamperedAndForeignTokens() {
+        String value = codec.encode(principal, 2000);
+
+        assertNull(codec.decode(value, 2000));
+        char last = value.charAt(value.length() - 1);
+        assertNull(codec.decode(value.substring(0, value.length() - 1) + (last == 'A' ? 'B' : 'A'), 1000));
+        assertNull(codec.decode("garbage", 1000));
+
+        byte[] otherSecret = "fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.UTF_8);
+        assertNull(new AuthTokenCodec(otherSecret).decode(value, 1000));
+    }
+}
@@ -0,0 +1,82 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.FlashMap;
+
+import javax.servlet.http.Cookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CookieFlashMapManagerTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    private final CookieFlashMapManager manager = newManager(SECRET);
+
+    @Test
+    void flashAttributesSurviveRedirectWithoutSession() {
+        MockHttpServletRequest post = new MockHttpServletRequest("POST", "/admin/save");
+        MockHttpServletResponse redirect = new MockHttpServletResponse();
+        manager.saveOutputFlashMap(flash("message", "Пользователь успешно обновлен!"), post, redirect);
+        Cookie cookie = redirect.getCookie("FLASH");
+        assertNotNull(cookie);
+        assertNull(post.getSession(false));
+
+        MockHttpServletRequest get = new MockHttpServletRequest("GET", "/admin");
+        get.setCookies(cookie);
+        MockHttpServletResponse page = new MockHttpServletResponse();
+        FlashMap input = manager.retrieveAndUpdate(get, page);
+
+        assertNotNull(input);
+        assertEquals("Пользователь успешно обновлен!", input.get("message"));
+        // Прочитанные атрибуты больше не приходят
+        assertTrue(page.getHeader(HttpHeaders.SET_COOKIE).contains("Max-Age=0"));
+        assertNull(get.getSession(false));
+    }
+
+    @Test
+    void cookieFromAnotherKeyOrTamperedIsIgnored() {
+        MockHttpServletResponse redirect = new MockHttpServletResponse();
+        newManager("another-secret-another-secret-12").saveOutputFlashMap(flash("openEditModal", true),
+                new MockHttpServletRequest("POST", "/admin/user/1"), redirect);
+        String value = redirect.getCookie("FLASH").getValue();
+
+        assertNull(retrieve(value));
+        assertNull(retrieve("x" + value.substring(1)));
+        assertNull(retrieve("not base64!"));
+    }
+
+    @Test
+    void blankSecretIsRejectedUnlessRandomKeyIsAllowed() throws Exception {
+        assertThrows(IllegalStateException.class, () -> new CookieFlashMapManager(" ", false));
+        assertNotNull(new CookieFlashMapManager("", true));
+    }
+
+    private FlashMap retrieve(String value) {
+        MockHttpServletRequest get = new MockHttpServletRequest("GET", "/admin");
+        get.setCookies(new Cookie("FLASH", value));
+        return manager.retrieveAndUpdate(get, new MockHttpServletResponse());
+    }
+
+    private static FlashMap flash(String name, Object value) {
+        FlashMap flashMap = new FlashMap();
+        flashMap.put(name, value);
+        flashMap.setTargetRequestPath("/admin");
+        return flashMap;
+    }
+
+    private static CookieFlashMapManager newManager(String secret) {
+        try {
+            return new CookieFlashMapManager(secret, false);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
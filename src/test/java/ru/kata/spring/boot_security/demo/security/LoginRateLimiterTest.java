@@ -0,0 +1,132 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.event.AuthenticationFailureBadCredentialsEvent;
+import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
+import ru.kata.spring.boot_security.demo.service.UserService;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LoginRateLimiterTest {
+
+    private static final int LOCKOUT_THRESHOLD = 3;
+
+    private UserService userService;
+    private LoginRateLimiter limiter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        userService = mock(UserService.class);
+        when(userService.lockUntil(any(), any())).thenReturn(true);
+        ObjectProvider<UserService> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(userService);
+        // Логин: 2 попытки подряд, восполнение раз в час — в пределах теста не восполняется
+        limiter = new LoginRateLimiter(provider, 100, Duration.ofSeconds(1), 2, Duration.ofHours(1),
+                1000, LOCKOUT_THRESHOLD, Duration.ofMinutes(15), Duration.ofMinutes(15));
+    }
+
+    @Test
+    void locksAccountExactlyAtThreshold() {
+        for (int i = 1; i < LOCKOUT_THRESHOLD; i++) {
+            limiter.onBadCredentials(badCredentials("Ivan"));
+        }
+        verify(userService, never()).lockUntil(any(), any());
+
+        limiter.onBadCredentials(badCredentials("ivan"));
+        verify(userService, times(1)).lockUntil(eq("ivan"), any(Instant.class));
+
+        // Счётчик сбрасывается блокировкой: следующая неудача не блокирует повторно
+        limiter.onBadCredentials(badCredentials("ivan"));
+        verify(userService, times(1)).lockUntil(any(), any());
+    }
+
+    @Test
+    void concurrentEditDefersLockoutToNextFailure() {
+        when(userService.lockUntil(eq("ivan"), any()))
+                .thenThrow(new OptimisticLockingFailureException("edited"))
+                .thenReturn(true);
+        for (int i = 0; i < LOCKOUT_THRESHOLD; i++) {
+            limiter.onBadCredentials(badCredentials("ivan"));
+        }
+        limiter.onBadCredentials(badCredentials("ivan"));
+
+        verify(userService, times(2)).lockUntil(eq("ivan"), any(Instant.class));
+        assertEquals(1L, limiter.stats().get("lockouts"));
+    }
+
+    @Test
+    void successResetsFailureCount() {
+        for (int i = 1; i < LOCKOUT_THRESHOLD; i++) {
+            limiter.onBadCredentials(badCredentials("ivan"));
+        }
+        limiter.onSuccess(success("ivan"));
+        limiter.onBadCredentials(badCredentials("ivan"));
+
+        verify(userService, never()).lockUntil(any(), any());
+    }
+
+    @Test
+    void throttlesBasicAttemptsByUsername() throws Exception {
+        LoginRateLimitFilter filter = LoginRateLimitFilter.httpBasic(limiter);
+
+        assertEquals(HttpStatus.OK.value(), basic(filter, "scraper", "wrong").getStatus());
+        assertEquals(HttpStatus.OK.value(), basic(filter, "Scraper", "wrong").getStatus());
+        MockHttpServletResponse throttled = basic(filter, "scraper", "right");
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), throttled.getStatus());
+        assertTrue(Long.parseLong(throttled.getHeader(HttpHeaders.RETRY_AFTER)) > 0);
+    }
+
+    @Test
+    void successfulBasicLoginsDoNotDrainUsernameBucket() throws Exception {
+        LoginRateLimitFilter filter = LoginRateLimitFilter.httpBasic(limiter);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(HttpStatus.OK.value(), basic(filter, "scraper", "right").getStatus());
+            limiter.onSuccess(success("scraper"));
+        }
+    }
+
+    private static MockHttpServletResponse basic(LoginRateLimitFilter filter, String username, String password)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/actuator/prometheus");
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static AuthenticationFailureBadCredentialsEvent badCredentials(String username) {
+        return new AuthenticationFailureBadCredentialsEvent(
+                new UsernamePasswordAuthenticationToken(username, "wrong"), new BadCredentialsException("wrong"));
+    }
+
+    private static AuthenticationSuccessEvent success(String username) {
+        return new AuthenticationSuccessEvent(new UsernamePasswordAuthenticationToken(username, null, null));
+    }
+}
@@ -0,0 +1,60 @@
+package ru.kata.spring.boot_security.demo.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketTest {
+
+    // 3 попытки подряд, дальше по одной в 10 нс
+    private static final long REFILL = 10;
+    private static final long BURST = 3 * REFILL;
+
+    @Test
+    void allowsBurstThenReportsWaitUntilNextToken() {
+        TokenBucket bucket = new TokenBucket(1000);
+
+        assertEquals(0, bucket.tryAcquire(1000, REFILL, BURST));
+        assertEquals(0, bucket.tryAcquire(1000, REFILL, BURST));
+        assertEquals(0, bucket.tryAcquire(1000, REFILL, BURST));
+        assertEquals(REFILL, bucket.tryAcquire(1000, REFILL, BURST));
+        // Отказ не сдвигает ведро: через 4 нс ждать остаётся 6
+        assertEquals(REFILL - 4, bucket.tryAcquire(1004, REFILL, BURST));
+
+        assertEquals(0, bucket.tryAcquire(1010, REFILL, BURST));
+        assertEquals(REFILL, bucket.tryAcquire(1010, REFILL, BURST));
+    }
+
+    @Test
+    void idleTimeRefillsUpToBurstOnly() {
+        TokenBucket bucket = new TokenBucket(0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(0, REFILL, BURST));
+        }
+
+        // Простой намного дольше полного восполнения даёт снова ровно burst попыток
+        long later = 1_000_000;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(later, REFILL, BURST));
+        }
+        assertEquals(REFILL, bucket.tryAcquire(later, REFILL, BURST));
+    }
+
+    @Test
+    void releaseReturnsOneTokenButNeverOverfills() {
+        TokenBucket bucket = new TokenBucket(0);
+        for (int i = 0; i < 3; i++) {
+            bucket.tryAcquire(0, REFILL, BURST);
+        }
+        bucket.release(0, REFILL);
+        assertEquals(0, bucket.tryAcquire(0, REFILL, BURST));
+        assertEquals(REFILL, bucket.tryAcquire(0, REFILL, BURST));
+
+        TokenBucket full = new TokenBucket(0);
+        full.release(0, REFILL);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, full.tryAcquire(0, REFILL, BURST));
+        }
+        assertEquals(REFILL, full.tryAcquire(0, REFILL, BURST));
+    }
+}
@@ -0,0 +1,144 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.kata.spring.boot_security.demo.entity.Role;
+import ru.kata.spring.boot_security.demo.entity.User;
+import ru.kata.spring.boot_security.demo.security.CredentialsVersionCache;
+import ru.kata.spring.boot_security.demo.security.PrincipalCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class UserBulkServiceTest {
+
+    // Порции по 2: пять пользователей проходятся в три транзакции
+    private static final int CHUNK_SIZE = 2;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private RoleRegistry roleRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private CredentialsVersionCache credentialsVersions;
+
+    @Autowired
+    private SecondLevelCacheEvictor cacheEvictor;
+
+    @Autowired
+    private UsernameFilter usernameFilter;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM user_roles WHERE user_id IN (SELECT id FROM users WHERE username LIKE 'test%')");
+        jdbcTemplate.update("DELETE FROM users WHERE username LIKE 'test%'");
+    }
+
+    @Test
+    void filterWalkCoversRowsThatStopMatchingAndSkipsActor() {
+        List<Long> ids = createUsers("testbulk", 5, List.of());
+        Long actorId = ids.get(2);
+
+        BulkUserRequest request = new BulkUserRequest();
+        request.setAction(BulkUserAction.DISABLE);
+        request.setUsernamePrefix("testbulk");
+        request.setEnabled(true);
+        BulkUserReport report = bulkService().apply(request, actorId);
+
+        // Отключённые порции перестают подходить под enabled = true, но keyset по id их не пропускает
+        assertEquals(5, report.getMatched());
+        assertEquals(4, report.getAffected());
+        assertEquals(3, report.getChunks());
+        for (Long id : ids) {
+            assertEquals(!id.equals(actorId), !enabled(id), "user " + id);
+        }
+    }
+
+    @Test
+    void roleChangeBumpsVersionsOnlyOfChangedUsers() {
+        Long adminRoleId = roleId("ROLE_ADMIN");
+        Long hasRole = createUsers("testhas", 1, List.of(adminRoleId)).get(0);
+        Long lacksRole = createUsers("testlacks", 1, List.of()).get(0);
+        List<Long> hasBefore = versions(hasRole);
+        List<Long> lacksBefore = versions(lacksRole);
+
+        BulkUserRequest request = new BulkUserRequest();
+        request.setAction(BulkUserAction.ADD_ROLES);
+        request.setIds(List.of(hasRole, lacksRole));
+        request.setRoleIds(List.of(adminRoleId));
+        BulkUserReport report = bulkService().apply(request, null);
+
+        assertEquals(1, report.getAffected());
+        assertEquals(hasBefore, versions(hasRole));
+        assertEquals(increment(lacksBefore), versions(lacksRole));
+
+        // Повтор ничего не меняет и не трогает версии
+        assertEquals(0, bulkService().apply(request, null).getAffected());
+        assertEquals(increment(lacksBefore), versions(lacksRole));
+    }
+
+    private UserBulkService bulkService() {
+        return new UserBulkService(namedJdbcTemplate, transactionManager, roleRegistry, principalCache,
+                credentialsVersions, cacheEvictor, usernameFilter, eventPublisher, CHUNK_SIZE);
+    }
+
+    private List<Long> createUsers(String prefix, int count, List<Long> roleIds) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User user = new User(prefix + i, "secret", "Тест", "Тестов", 30, true);
+            ids.add(userService.saveUser(user, roleIds).getId());
+        }
+        return ids;
+    }
+
+    private Long roleId(String authority) {
+        return roleRegistry.getAll().stream()
+                .filter(role -> role.getAuthority().equals(authority))
+                .map(Role::getId)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private boolean enabled(Long id) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT enabled FROM users WHERE id = ?",
+                Boolean.class, id));
+    }
+
+    // [version, credentials_version]
+    private List<Long> versions(Long id) {
+        return jdbcTemplate.queryForObject("SELECT version, credentials_version FROM users WHERE id = ?",
+                (rs, i) -> List.of(rs.getLong(1), rs.getLong(2)), id);
+    }
+
+    private static List<Long> increment(List<Long> versions) {
+        return List.of(versions.get(0) + 1, versions.get(1) + 1);
+    }
+}
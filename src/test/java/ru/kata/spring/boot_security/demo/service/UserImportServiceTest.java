@@ -0,0 +1,61 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class UserImportServiceTest {
+
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM user_roles WHERE user_id IN (SELECT id FROM users WHERE username LIKE 'test%')");
+        jdbcTemplate.update("DELETE FROM users WHERE username LIKE 'test%'");
+    }
+
+    @Test
+    void usernameTakenBehindTheFilterFailsOnlyThatRow() throws IOException {
+        // Как логин, созданный другим узлом: фильтр его не знает, и до INSERT проверка не доходит
+        jdbcTemplate.update("INSERT INTO users (username, password, enabled) VALUES ('testremote', 'x', true)");
+
+        ImportReport report = importCsv("username,password,age\n" +
+                "testfresh,secret,30\n" +
+                "testremote,secret,30\n" +
+                "testother,secret,30\n");
+
+        assertEquals(2, report.getImported());
+        assertEquals(1, report.getFailed());
+        assertEquals("testremote", report.getErrors().get(0).getUsername());
+        assertEquals("Пользователь с таким именем уже существует", report.getErrors().get(0).getMessage());
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM users WHERE username IN ('testfresh', 'testother')", Integer.class));
+    }
+
+    @Test
+    void headerWithoutRequiredColumnsIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> importCsv("login,age\ntestfresh,30\n"));
+        assertThrows(IllegalArgumentException.class, () -> importCsv(""));
+    }
+
+    private ImportReport importCsv(String csv) throws IOException {
+        return userImportService.importUsers(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                UserDataFormat.CSV);
+    }
+}
@@ -0,0 +1,154 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import ru.kata.spring.boot_security.demo.diagnostics.SlowQuerySampler;
+import ru.kata.spring.boot_security.demo.entity.User;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Какие запросы пишет правка: порог медленных запросов нулевой, поэтому SlowQuerySampler
+ * запоминает каждый запрос, и по его списку recent видны колонки UPDATE и строки user_roles.
+ */
+@SpringBootTest(properties = {
+        "diagnostics.slow-query.threshold=0ms",
+        "diagnostics.slow-query.recent-size=1000",
+        "logging.level.slow-query=ERROR"
+})
+@ActiveProfiles("test")
+@RecordApplicationEvents
+class UserPatchTest {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private SlowQuerySampler slowQuerySampler;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationEvents events;
+
+    private long adminRoleId;
+    private long userRoleId;
+
+    @BeforeEach
+    void loadRoles() {
+        adminRoleId = jdbcTemplate.queryForObject("SELECT id FROM authorities WHERE authority = 'ROLE_ADMIN'", Long.class);
+        userRoleId = jdbcTemplate.queryForObject("SELECT id FROM authorities WHERE authority = 'ROLE_USER'", Long.class);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM user_roles WHERE user_id IN (SELECT id FROM users WHERE username LIKE 'test%')");
+        jdbcTemplate.update("DELETE FROM users WHERE username LIKE 'test%'");
+    }
+
+    @Test
+    void patchUpdatesOnlyChangedColumns() {
+        User user = create(List.of(adminRoleId));
+        UserPatch patch = new UserPatch();
+        patch.setName("Другое");
+        patch.setAge(30);
+
+        List<String> writes = writesDuring(() -> userService.patchUser(user.getId(), patch, user.getVersion()));
+
+        assertEquals(List.of("update users set name=?, version=? where id=? and version=?"), writes);
+    }
+
+    @Test
+    void roleChangeTouchesOnlyDifferingRows() {
+        User user = create(List.of(adminRoleId));
+        UserPatch patch = new UserPatch();
+        patch.setRoleIds(List.of(adminRoleId, userRoleId));
+
+        List<String> added = writesDuring(() -> userService.patchUser(user.getId(), patch, null));
+
+        assertEquals(List.of(
+                "update users set credentials_version=?, version=? where id=? and version=?",
+                "insert into user_roles (user_id, role_id) values (?, ?)"), added);
+
+        patch.setRoleIds(List.of(userRoleId));
+        List<String> removed = writesDuring(() -> userService.patchUser(user.getId(), patch, null));
+
+        assertEquals(List.of(
+                "update users set credentials_version=?, version=? where id=? and version=?",
+                "delete from user_roles where user_id=? and role_id=?"), removed);
+        assertEquals(List.of(userRoleId), jdbcTemplate.queryForList(
+                "SELECT role_id FROM user_roles WHERE user_id = ?", Long.class, user.getId()));
+    }
+
+    @Test
+    void unchangedPatchWritesNothingAndPublishesNothing() {
+        User user = create(List.of(adminRoleId));
+        UserPatch patch = new UserPatch();
+        patch.setName(user.getName());
+        patch.setEnabled(true);
+        patch.setRoleIds(List.of(adminRoleId));
+        events.clear();
+
+        List<String> writes = writesDuring(() -> userService.patchUser(user.getId(), patch, user.getVersion()));
+
+        assertEquals(List.of(), writes);
+        assertEquals(0, events.stream(UserChangedEvent.class).count());
+        assertEquals(user.getVersion(), userService.findVersion(user.getId()).orElseThrow());
+    }
+
+    @Test
+    void formEditKeepsDisabledUserDisabled() {
+        User user = create(List.of(adminRoleId));
+        UserPatch disable = new UserPatch();
+        disable.setEnabled(false);
+        userService.patchUser(user.getId(), disable, null);
+        int credentialsVersion = credentialsVersion(user.getId());
+
+        // В форме правки нет поля enabled: привязанный User из формы всегда enabled = true
+        User form = new User(user.getUsername(), "", "Другое", user.getLastName(), user.getAge(), true);
+        userService.updateUser(user.getId(), form, List.of());
+
+        User reloaded = userService.findById(user.getId()).orElseThrow();
+        assertFalse(reloaded.isEnabled());
+        assertEquals("Другое", reloaded.getName());
+        assertEquals(credentialsVersion, credentialsVersion(user.getId()));
+    }
+
+    private User create(List<Long> roleIds) {
+        return userService.saveUser(new User("testpatch", "secret", "Тест", "Тестов", 30, true), roleIds);
+    }
+
+    private int credentialsVersion(Long id) {
+        return jdbcTemplate.queryForObject("SELECT credentials_version FROM users WHERE id = ?", Integer.class, id);
+    }
+
+    // Записи в users и user_roles, выполненные за время action, в порядке выполнения
+    @SuppressWarnings("unchecked")
+    private List<String> writesDuring(Runnable action) {
+        int before = recent().size();
+        action.run();
+        List<Map<String, Object>> recent = recent();
+        return recent.subList(before, recent.size()).stream()
+                .map(entry -> (String) entry.get("sql"))
+                .filter(sql -> sql.matches("(?i)(update users|insert into user_roles|delete from user_roles)\\b.*"))
+                .collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> recent() {
+        return (List<Map<String, Object>>) slowQuerySampler.stats().get("recent");
+    }
+}
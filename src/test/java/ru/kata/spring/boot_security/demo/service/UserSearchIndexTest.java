@@ -0,0 +1,113 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserSearchIndexTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private UserSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbc = new JdbcTemplate(database);
+        jdbc.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, username VARCHAR(255), name VARCHAR(255), " +
+                "lastname VARCHAR(255))");
+        jdbc.update("INSERT INTO users VALUES (1, 'ivan', 'Иван', 'Петров'), (2, 'ivanka', 'Иванка', 'Сидорова'), " +
+                "(3, 'jan', 'Jan', 'van der Berg')");
+        index = new UserSearchIndex(database, Duration.ZERO, false);
+        index.afterSingletonsInstantiated();
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.destroy();
+        database.shutdown();
+    }
+
+    @Test
+    void findsByPrefixOfAnyFieldIgnoringCase() {
+        assertEquals(List.of(1L, 2L), ids("IVA"));
+        assertEquals(List.of(2L), ids("сидор"));
+        assertEquals(List.of(1L), ids("ivan петр"));
+    }
+
+    @Test
+    void findsEachWordOfMultiWordField() {
+        assertEquals(List.of(3L), ids("berg"));
+        assertEquals(List.of(3L), ids("van der"));
+        assertEquals(List.of(3L), ids("der jan"));
+    }
+
+    @Test
+    void updateReplacesOldWordsAndRemoveDropsUser() {
+        index.onUserChanged(UserChangedEvent.saved(3L, "jan", "Jan", "Berg"));
+        assertEquals(List.of(3L), ids("berg"));
+        assertTrue(ids("van").isEmpty());
+
+        index.onUserChanged(UserChangedEvent.deleted(1L));
+        assertEquals(List.of(2L), ids("ivan"));
+    }
+
+    @Test
+    void resyncPicksUpChangesMadeElsewhere() {
+        jdbc.update("UPDATE users SET lastname = 'Смирнова' WHERE id = 2");
+        jdbc.update("DELETE FROM users WHERE id = 1");
+        jdbc.update("INSERT INTO users VALUES (4, 'ivo', 'Иво', 'Новак')");
+
+        index.resync();
+
+        assertEquals(List.of(2L, 4L), ids("iv"));
+        assertEquals(List.of(2L), ids("смирн"));
+        assertTrue(ids("сидор").isEmpty());
+    }
+
+    @Test
+    void buildAfterStartupFindsNothingUntilReady() throws InterruptedException {
+        UserSearchIndex deferred = new UserSearchIndex(database, Duration.ZERO, true);
+        try {
+            deferred.afterSingletonsInstantiated();
+            deferred.onUserChanged(UserChangedEvent.saved(4L, "ivo", "Иво", "Новак"));
+            assertTrue(deferred.search("iv", 10).isEmpty());
+
+            deferred.onApplicationReady();
+            for (int i = 0; i < 100 && !deferred.isReady(); i++) {
+                Thread.sleep(50);
+            }
+
+            assertTrue(deferred.isReady());
+            assertEquals(List.of(1L, 2L), ids(deferred, "iva"));
+        } finally {
+            deferred.destroy();
+        }
+    }
+
+    private List<Long> ids(String query) {
+        return ids(index, query);
+    }
+
+    private static List<Long> ids(UserSearchIndex index, String query) {
+        return index.search(query, 10).stream()
+                .map(UserSuggestion::getId)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,81 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.kata.spring.boot_security.demo.entity.User;
+import ru.kata.spring.boot_security.demo.security.CredentialsVersionCache;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class UserServiceTest {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CredentialsVersionCache credentialsVersions;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM user_roles WHERE user_id IN (SELECT id FROM users WHERE username LIKE 'test%')");
+        jdbcTemplate.update("DELETE FROM users WHERE username LIKE 'test%'");
+    }
+
+    @Test
+    void usernameTakenBehindTheFilterIsReportedAsConflict() {
+        // Как логин, созданный другим узлом: фильтр этого узла о нём не знает
+        jdbcTemplate.update("INSERT INTO users (username, password, enabled) VALUES ('testremote', 'x', true)");
+
+        User user = new User("testremote", "secret", "Тест", "Тестов", 30, true);
+        assertThrows(UsernameAlreadyExistsException.class, () -> userService.saveUser(user, List.of()));
+    }
+
+    @Test
+    void lockoutBumpsVersionAndKeepsOtherUsersCached() {
+        User locked = userService.saveUser(new User("testlocked", "secret", "Тест", "Тестов", 30, true), List.of());
+        User other = userService.saveUser(new User("testother", "secret", "Тест", "Тестов", 30, true), List.of());
+        userService.findById(other.getId());
+        assertTrue(entityManagerFactory.getCache().contains(User.class, other.getId()));
+
+        Instant until = Instant.now().plus(15, ChronoUnit.MINUTES);
+        assertTrue(userService.lockUntil("testlocked", until));
+
+        User reloaded = userService.findById(locked.getId()).orElseThrow();
+        assertEquals(locked.getVersion() + 1, reloaded.getVersion());
+        assertFalse(reloaded.isAccountNonLocked());
+        assertTrue(entityManagerFactory.getCache().contains(User.class, other.getId()));
+        assertFalse(userService.lockUntil("testmissing", until));
+    }
+
+    @Test
+    void deleteDropsCachedCredentialsVersion() {
+        User user = userService.saveUser(new User("testdeleted", "secret", "Тест", "Тестов", 30, true), List.of());
+        assertNotNull(credentialsVersions.get(user.getId()));
+
+        assertTrue(userService.deleteUser(user.getId(), user.getVersion()));
+
+        assertNull(credentialsVersions.get(user.getId()));
+    }
+}
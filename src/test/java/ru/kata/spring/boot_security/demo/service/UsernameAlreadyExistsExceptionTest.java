@@ -0,0 +1,33 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UsernameAlreadyExistsExceptionTest {
+
+    @Test
+    void recognisesUsernameConstraintInEachSchema() {
+        assertTrue(conflict("Duplicate entry 'ivan' for key 'users.UK_r43af9ap4edm43mmtq01oddj6'", "23000", 1062));
+        assertTrue(conflict("Duplicate entry 'ivan' for key 'users.uk_users_username'", "23000", 1062));
+        assertTrue(conflict("Unique index or primary key violation: \"PUBLIC.UK_R43AF9AP4EDM43MMTQ01ODDJ6_INDEX_4 " +
+                "ON PUBLIC.USERS(USERNAME) VALUES 1\"", "23505", 23505));
+    }
+
+    @Test
+    void otherIntegrityViolationsAreNotUsernameConflicts() {
+        assertFalse(conflict("Duplicate entry '5-1' for key 'user_roles.PRIMARY'", "23000", 1062));
+        assertFalse(conflict("Cannot add or update a child row: a foreign key constraint fails " +
+                "(`user_roles`, CONSTRAINT `fk_user_roles_role`)", "23000", 1452));
+    }
+
+    private static boolean conflict(String message, String sqlState, int errorCode) {
+        return UsernameAlreadyExistsException.isUsernameConflict(
+                new DataIntegrityViolationException("could not execute statement",
+                        new SQLException(message, sqlState, errorCode)));
+    }
+}
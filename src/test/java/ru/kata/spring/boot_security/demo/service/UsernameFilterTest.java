@@ -0,0 +1,106 @@
+package ru.kata.spring.boot_security.demo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UsernameFilterTest {
+
+    // Порог пересборки — не меньше 1000 удалений
+    private static final int REBUILD_AFTER_REMOVALS = 1000;
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private UsernameFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbc = new JdbcTemplate(database);
+        jdbc.execute("CREATE TABLE users (id BIGINT AUTO_INCREMENT PRIMARY KEY, username VARCHAR(255))");
+        jdbc.update("INSERT INTO users (username) VALUES ('Ivan'), ('petr')");
+        filter = new UsernameFilter(database, new SyncTaskExecutor(), 10_000, 0.001, false);
+        filter.rebuild();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        database.shutdown();
+    }
+
+    @Test
+    void answersFromBuiltNamesIgnoringCase() {
+        assertTrue(filter.mightContain("ivan"));
+        assertTrue(filter.mightContain("PETR"));
+        assertFalse(filter.mightContain("sidor"));
+    }
+
+    @Test
+    void nameAddedInTransactionAppearsAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        filter.put("sidor");
+        assertFalse(filter.mightContain("sidor"));
+
+        // Пересборка до коммита: строки ещё нет в SELECT, а имя не должно потеряться
+        filter.rebuild();
+        jdbc.update("INSERT INTO users (username) VALUES ('sidor')");
+        TransactionSynchronizationUtils.invokeAfterCommit(TransactionSynchronizationManager.getSynchronizations());
+
+        assertTrue(filter.mightContain("sidor"));
+    }
+
+    @Test
+    void rollbackLeavesNameOut() {
+        TransactionSynchronizationManager.initSynchronization();
+        filter.put("sidor");
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertFalse(filter.mightContain("sidor"));
+    }
+
+    @Test
+    void rebuildsAfterEnoughRemovals() {
+        jdbc.update("DELETE FROM users WHERE username = 'Ivan'");
+        for (int i = 0; i < REBUILD_AFTER_REMOVALS - 1; i++) {
+            filter.recordRemoval();
+        }
+        assertTrue(filter.mightContain("ivan"));
+        assertEquals((long) REBUILD_AFTER_REMOVALS - 1, filter.stats().get("removalsSinceBuild"));
+
+        filter.recordRemoval();
+
+        assertFalse(filter.mightContain("ivan"));
+        assertTrue(filter.mightContain("petr"));
+        assertEquals(0L, filter.stats().get("removalsSinceBuild"));
+    }
+
+    @Test
+    void buildAfterStartupAnswersMaybeUntilReady() {
+        UsernameFilter deferred = new UsernameFilter(database, new SyncTaskExecutor(), 10_000, 0.001, true);
+        deferred.afterSingletonsInstantiated();
+        assertTrue(deferred.mightContain("free"));
+        assertEquals(false, deferred.stats().get("ready"));
+
+        deferred.onApplicationReady();
+
+        assertFalse(deferred.mightContain("free"));
+        assertTrue(deferred.mightContain("IVAN"));
+    }
+}